@@ -0,0 +1,152 @@
+package com.github.chrisgleissner.sandbox.sqllog.benchmark;
+
+import com.github.chrisgleissner.sandbox.sqllog.Customer;
+import com.github.chrisgleissner.sandbox.sqllog.CustomerRepository;
+import com.github.chrisgleissner.sandbox.sqllog.SqlLog;
+import com.github.chrisgleissner.sandbox.sqllog.SqlLogApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead which {@link SqlLog} adds to statements executed against an in-memory H2 database, compared
+ * to the raw {@code DataSource}. Each {@link CaptureMode} starts the {@link SqlLogApplication} with the corresponding
+ * properties. Throughput mode reports ops/us, or ops/s when run with {@code -tu s}, and sample time mode reports
+ * latency percentiles such as p99. Run with {@code -prof gc} to report the allocation rate per operation as
+ * {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlLogOverheadBenchmark {
+    private static final String PREFIX = "--com.github.chrisgleissner.sandbox.sqllog";
+    private static final int ITEM_COUNT = 1024;
+    private static final int BATCH_SIZE = 16;
+    private static final int LAST_NAME_COUNT = 16;
+    private static final String SAVED_LAST_NAME = "Bauer";
+
+    public enum CaptureMode {
+        /**
+         * Data sources aren't proxied.
+         */
+        RAW,
+        /**
+         * The default configuration, which traces all JDBC methods and logs each statement.
+         */
+        DEVELOPMENT(PREFIX + "=true"),
+        PRODUCTION(PREFIX + "=true", PREFIX + ".profile=production"),
+        STATISTICS(PREFIX + "=true", PREFIX + ".profile=production", PREFIX + ".statistics.enabled=true"),
+        SAMPLED(PREFIX + "=true", PREFIX + ".profile=production", PREFIX + ".sampling.max-entries-per-second=1000"),
+        JOURNAL(PREFIX + "=true", PREFIX + ".profile=production");
+
+        private final String[] args;
+
+        CaptureMode(String... args) {
+            this.args = args;
+        }
+    }
+
+    @Param
+    CaptureMode mode;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private CustomerRepository repository;
+    private Path journalDirectory;
+    private List<Object[]> batchArgs;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> args = new ArrayList<>();
+        args.add("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        // Statements logged in development mode are queued and formatted, but not written to the console
+        args.add("--logging.level.root=warn");
+        for (String arg : mode.args)
+            args.add(arg);
+        if (mode == CaptureMode.JOURNAL) {
+            journalDirectory = Files.createTempDirectory("sqllog-benchmark");
+            args.add(PREFIX + ".journal.directory=" + journalDirectory);
+        }
+        context = new SpringApplicationBuilder(SqlLogApplication.class).web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        repository = context.getBean(CustomerRepository.class);
+
+        jdbcTemplate.execute("create table item (id int primary key, name varchar(64))");
+        for (int i = 0; i < ITEM_COUNT; i++)
+            jdbcTemplate.update("insert into item (id, name) values (?, ?)", i, "item-" + i);
+        for (int i = 0; i < LAST_NAME_COUNT * 4; i++)
+            repository.save(new Customer("First-" + i, lastName(i)));
+        batchArgs = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++)
+            batchArgs.add(new Object[]{i, "item-" + i});
+    }
+
+    /**
+     * Deletes the customers saved by {@link #saveCustomer()}, so the customer table doesn't grow across iterations.
+     */
+    @Setup(Level.Iteration)
+    public void deleteSavedCustomers() {
+        jdbcTemplate.update("delete from customer where last_name = ?", SAVED_LAST_NAME);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        if (journalDirectory != null)
+            FileSystemUtils.deleteRecursively(journalDirectory);
+    }
+
+    @Benchmark
+    public String select() {
+        return jdbcTemplate.queryForObject("select name from item where id = ?", String.class, index++ & (ITEM_COUNT - 1));
+    }
+
+    /**
+     * Merges a batch of items, so the table doesn't grow.
+     */
+    @Benchmark
+    public int[] batchInsert() {
+        return jdbcTemplate.batchUpdate("merge into item (id, name) key (id) values (?, ?)", batchArgs);
+    }
+
+    @Benchmark
+    public Customer saveCustomer() {
+        return repository.save(new Customer("Jack", SAVED_LAST_NAME));
+    }
+
+    @Benchmark
+    public List<Customer> findCustomersByLastName() {
+        return repository.findByLastName(lastName(index++));
+    }
+
+    private static String lastName(int i) {
+        return "Last-" + (i & (LAST_NAME_COUNT - 1));
+    }
+}
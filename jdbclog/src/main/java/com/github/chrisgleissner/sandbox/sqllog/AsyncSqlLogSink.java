@@ -0,0 +1,177 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes captured statements to SLF4J on a background thread, so that the latency of JDBC calls doesn't depend on the
+ * speed of the logging backend. Query threads hand entries off through a {@link BoundedMpscQueue}; the background
+ * thread drains it in batches. If the queue is full, the {@link FullQueuePolicy} decides whether an entry is discarded
+ * or the query thread waits for space. If a {@link SqlJournal} is configured, the background thread also appends all
+ * entries to it and closes it when it terminates. If SLF4J logging is disabled and there is no journal, no background
+ * thread is started.
+ * <p>
+ * When the queue is empty, the background thread parks until a query thread unparks it after offering an entry. Query
+ * threads only unpark it if it announced that it is about to park, so a busy sink costs them a volatile read.
+ */
+public class AsyncSqlLogSink implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    private static final Logger log = LoggerFactory.getLogger(SqlLog.class);
+    private static final int BATCH_SIZE = 256;
+    /**
+     * Bounds the time for which the background thread parks, in case it misses an unpark.
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long FULL_QUEUE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final BoundedMpscQueue<SqlLogEntry> queue;
+    private final FullQueuePolicy fullQueuePolicy;
+    private final LongAdder discardedCount = new LongAdder();
+    private final SqlJournal journal;
+    private final boolean logging;
+    private final Thread thread;
+    private volatile boolean parking;
+    private volatile boolean closed;
+
+    public enum FullQueuePolicy {
+        /**
+         * Discards the entry; the number of discarded entries is logged periodically.
+         */
+        DISCARD,
+        /**
+         * Lets the query thread wait until there is space in the queue.
+         */
+        BLOCK
+    }
+
+    public AsyncSqlLogSink() {
+        this(DEFAULT_QUEUE_CAPACITY, FullQueuePolicy.DISCARD);
+    }
+
+    public AsyncSqlLogSink(int queueCapacity, FullQueuePolicy fullQueuePolicy) {
+        this(queueCapacity, fullQueuePolicy, null);
+    }
+
+    /**
+     * @param journal journal to which all entries are appended; null to only log them
+     */
+    public AsyncSqlLogSink(int queueCapacity, FullQueuePolicy fullQueuePolicy, SqlJournal journal) {
+        this(queueCapacity, fullQueuePolicy, journal, true);
+    }
+
+    /**
+     * @param logging whether entries are logged via SLF4J
+     */
+    public AsyncSqlLogSink(int queueCapacity, FullQueuePolicy fullQueuePolicy, SqlJournal journal, boolean logging) {
+        this.queue = new BoundedMpscQueue<>(queueCapacity);
+        this.fullQueuePolicy = fullQueuePolicy;
+        this.journal = journal;
+        this.logging = logging;
+        if (journal != null || logging) {
+            this.thread = new Thread(this::run, "sqllog-sink");
+            thread.setDaemon(true);
+            thread.start();
+        } else
+            this.thread = null;
+    }
+
+    public void accept(SqlLogEntry entry) {
+        if (closed || journal == null && !isLogging())
+            return;
+        while (!queue.offer(entry)) {
+            if (fullQueuePolicy == FullQueuePolicy.DISCARD) {
+                discardedCount.increment();
+                return;
+            }
+            LockSupport.parkNanos(FULL_QUEUE_PARK_NANOS);
+        }
+        if (parking)
+            LockSupport.unpark(thread);
+    }
+
+    public Optional<SqlJournal> getJournal() {
+        return Optional.ofNullable(journal);
+    }
+
+    public long getDiscardedCount() {
+        return discardedCount.sum();
+    }
+
+    private void run() {
+        try {
+            drain();
+        } finally {
+            if (journal != null)
+                journal.close();
+        }
+    }
+
+    private void drain() {
+        List<SqlLogEntry> batch = new ArrayList<>(BATCH_SIZE);
+        long reportedDiscardedCount = 0;
+        while (!closed || !queue.isEmpty()) {
+            if (queue.drain(batch::add, BATCH_SIZE) == 0) {
+                park();
+                continue;
+            }
+            for (SqlLogEntry entry : batch) {
+                if (journal != null)
+                    append(entry);
+                if (isLogging())
+                    log.info("{}: {}", entry.getThreadId(), entry.renderJson());
+            }
+            batch.clear();
+            long discardedCount = getDiscardedCount();
+            if (discardedCount > reportedDiscardedCount) {
+                log.warn("Discarded {} SQL log entries since the queue was full", discardedCount - reportedDiscardedCount);
+                reportedDiscardedCount = discardedCount;
+            }
+        }
+    }
+
+    /**
+     * Parks unless an entry was offered after the last drain. Announcing the intent to park before checking the queue
+     * ensures that a query thread which offers an entry after the check sees the announcement and unparks this thread.
+     */
+    private void park() {
+        parking = true;
+        if (queue.isEmpty() && !closed)
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        parking = false;
+    }
+
+    private boolean isLogging() {
+        return logging && log.isInfoEnabled();
+    }
+
+    private void append(SqlLogEntry entry) {
+        try {
+            journal.append(entry);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to append SQL log entry to journal in {}", journal.getDirectory(), e);
+        }
+    }
+
+    /**
+     * Stops accepting entries and waits up to 5 seconds for the queued entries to be written. The journal is closed by
+     * the background thread once it has written them, so it may still be open when this method returns.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            if (thread.isAlive())
+                log.warn("SQL log sink is still writing queued entries after being closed");
+        }
+    }
+}
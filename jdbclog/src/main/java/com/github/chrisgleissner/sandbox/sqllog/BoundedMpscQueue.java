@@ -0,0 +1,76 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free bounded queue for many producers and a single consumer. Producers claim a slot by advancing the producer
+ * index, provided the queue isn't full, and then publish their element into it. The consumer clears a slot before
+ * advancing the consumer index, so a claimed slot is always empty.
+ */
+class BoundedMpscQueue<T> {
+    private final AtomicReferenceArray<T> elements;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of elements, rounded up to the next power of two
+     */
+    BoundedMpscQueue(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive, but was " + capacity);
+        int powerOfTwoCapacity = 1;
+        while (powerOfTwoCapacity < capacity)
+            powerOfTwoCapacity <<= 1;
+        this.capacity = powerOfTwoCapacity;
+        this.mask = powerOfTwoCapacity - 1;
+        this.elements = new AtomicReferenceArray<>(powerOfTwoCapacity);
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    boolean offer(T element) {
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index - consumerIndex.get() >= capacity)
+                return false;
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        elements.lazySet((int) index & mask, element);
+        return true;
+    }
+
+    /**
+     * Removes elements in order until the queue is empty, the limit is reached or an element has been claimed but not
+     * yet published by its producer. Must only be called by the consumer thread.
+     *
+     * @return the number of removed elements
+     */
+    int drain(Consumer<T> consumer, int limit) {
+        long index = consumerIndex.get();
+        int count = 0;
+        while (count < limit) {
+            int slot = (int) index & mask;
+            T element = elements.get(slot);
+            if (element == null)
+                break;
+            elements.lazySet(slot, null);
+            consumerIndex.lazySet(++index);
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return producerIndex.get() == consumerIndex.get();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+}
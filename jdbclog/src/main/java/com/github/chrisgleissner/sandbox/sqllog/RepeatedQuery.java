@@ -0,0 +1,39 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Statement fingerprint executed repeatedly for the same thread id, as found by {@link RepeatedQueryDetector}.
+ */
+@Getter
+@RequiredArgsConstructor
+public class RepeatedQuery {
+    private final String threadId;
+    private final String fingerprint;
+    private final int count;
+    /**
+     * Number of distinct query texts and parameter values among the executions.
+     */
+    private final int distinctCount;
+    /**
+     * The first distinct executions, rendered as their query text followed by their parameter values, if any.
+     */
+    private final List<String> samples;
+
+    /**
+     * @return whether the executions differ in their parameters, as when an association is loaded one entity at a
+     * time; otherwise the same statement was repeated
+     */
+    public boolean isNPlusOne() {
+        return distinctCount > 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RepeatedQuery(%s, threadId=%s, fingerprint=%s, count=%d, distinctCount=%d, samples=%s)",
+                isNPlusOne() ? "N+1" : "repeated", threadId, fingerprint, count, distinctCount, samples);
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.QueryInfo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.Comparator.comparingInt;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Finds statements which the entries retained by a {@link SqlLog} for one thread id execute with the same
+ * {@link SqlFingerprint} at least a threshold number of times. Such round-trip amplification typically stems from
+ * lazily loaded JPA associations (N+1 queries) or from statements executed in a loop instead of as a batch or join.
+ * <p>
+ * Tests can scope the check to a unit of work by running it with its own thread id:
+ * <pre>{@code
+ * try (SqlLogContext.Scope scope = SqlLogContext.open(id)) {
+ *     service.loadOrders();
+ * }
+ * new RepeatedQueryDetector(5).assertNoRepeatedQueries(sqlLog, id);
+ * }</pre>
+ */
+public class RepeatedQueryDetector {
+    public static final int DEFAULT_THRESHOLD = 10;
+    private static final int MAX_SAMPLES = 3;
+
+    private final int threshold;
+
+    public RepeatedQueryDetector() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold minimum number of executions of a fingerprint per thread id which is reported
+     */
+    public RepeatedQueryDetector(int threshold) {
+        if (threshold < 2)
+            throw new IllegalArgumentException("Threshold must be at least 2, but was " + threshold);
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the repeated queries of all thread ids, most frequent first
+     */
+    public List<RepeatedQuery> detect(SqlLog sqlLog) {
+        return detect(sqlLog.streamEntries());
+    }
+
+    /**
+     * @return the repeated queries of the specified thread id, most frequent first
+     */
+    public List<RepeatedQuery> detect(SqlLog sqlLog, String threadId) {
+        return detect(sqlLog.streamEntriesForThreadId(threadId));
+    }
+
+    /**
+     * @throws AssertionError listing all repeated queries of the specified thread id, if there are any
+     */
+    public void assertNoRepeatedQueries(SqlLog sqlLog, String threadId) {
+        List<RepeatedQuery> repeatedQueries = detect(sqlLog, threadId);
+        if (!repeatedQueries.isEmpty())
+            throw new AssertionError(String.format("Found %d queries executed at least %d times for thread id %s:\n%s",
+                    repeatedQueries.size(), threshold, threadId,
+                    repeatedQueries.stream().map(RepeatedQuery::toString).collect(joining("\n"))));
+    }
+
+    /**
+     * @throws AssertionError listing all repeated queries of the specified thread id which are executed with different
+     *                        parameters, if there are any
+     */
+    public void assertNoNPlusOneQueries(SqlLog sqlLog, String threadId) {
+        List<RepeatedQuery> nPlusOneQueries = detect(sqlLog, threadId).stream()
+                .filter(RepeatedQuery::isNPlusOne).collect(toList());
+        if (!nPlusOneQueries.isEmpty())
+            throw new AssertionError(String.format("Found %d N+1 queries executed at least %d times for thread id %s:\n%s",
+                    nPlusOneQueries.size(), threshold, threadId,
+                    nPlusOneQueries.stream().map(RepeatedQuery::toString).collect(joining("\n"))));
+    }
+
+    List<RepeatedQuery> detect(Stream<SqlLogEntry> entries) {
+        Map<String, Map<String, Executions>> executionsByThreadId = new LinkedHashMap<>();
+        entries.forEach(e -> executionsByThreadId.computeIfAbsent(e.getThreadId(), id -> new LinkedHashMap<>())
+                .computeIfAbsent(e.getFingerprint(), fp -> new Executions()).add(e));
+        List<RepeatedQuery> repeatedQueries = new ArrayList<>();
+        executionsByThreadId.forEach((threadId, executionsByFingerprint) ->
+                executionsByFingerprint.forEach((fingerprint, executions) -> {
+                    if (executions.count >= threshold)
+                        repeatedQueries.add(new RepeatedQuery(threadId, fingerprint, executions.count,
+                                executions.distinct.size(), executions.samples));
+                }));
+        repeatedQueries.sort(comparingInt(RepeatedQuery::getCount).reversed());
+        return repeatedQueries;
+    }
+
+    private static class Executions {
+        private final Set<String> distinct = new HashSet<>();
+        private final List<String> samples = new ArrayList<>(MAX_SAMPLES);
+        private int count;
+
+        void add(SqlLogEntry entry) {
+            count++;
+            String execution = entry.getQueries().stream().map(QueryInfo::getQuery).collect(joining("; "));
+            List<String> parameterValues = entry.getParameterValues();
+            if (!parameterValues.isEmpty())
+                execution = execution + " " + parameterValues;
+            if (distinct.add(execution) && samples.size() < MAX_SAMPLES)
+                samples.add(execution);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Lock-free bounded buffer which overwrites its oldest entries once full. Writers claim a sequence number and publish
+ * their entry into the slot of that sequence; readers never block writers. An entry whose writer was overtaken by a
+ * writer of the same slot with a higher sequence is dropped, as is every overwritten entry.
+ */
+class RingBuffer<T> {
+    private final int capacity;
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final LongAdder droppedCount = new LongAdder();
+
+    RingBuffer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive, but was " + capacity);
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @return the entry dropped to make room, i.e. the overwritten entry or the added entry itself if it was
+     * overtaken; null if none was dropped
+     */
+    T add(T entry) {
+        long sequence = nextSequence.getAndIncrement();
+        int index = (int) (sequence % capacity);
+        Slot<T> newSlot = new Slot<>(sequence, entry);
+        while (true) {
+            Slot<T> slot = slots.get(index);
+            if (slot != null && slot.sequence > sequence) {
+                droppedCount.increment();
+                return entry;
+            }
+            if (slots.compareAndSet(index, slot, newSlot)) {
+                if (slot == null)
+                    return null;
+                droppedCount.increment();
+                return slot.entry;
+            }
+        }
+    }
+
+    /**
+     * Passes retained entries to the consumer, oldest first, stopping before the first entry whose writer hasn't
+     * published it yet, so that a reader resuming from the returned sequence doesn't miss it.
+     *
+     * @param fromSequence sequence of the first entry to read; older entries which are no longer retained are skipped
+     * @return the sequence from which to continue reading
+     */
+    long read(long fromSequence, int maxEntries, Consumer<? super T> consumer) {
+        long end = nextSequence.get();
+        long sequence = Math.max(fromSequence, end - capacity);
+        for (int count = 0; sequence < end && count < maxEntries; sequence++) {
+            Slot<T> slot = slots.get((int) (sequence % capacity));
+            if (slot == null || slot.sequence < sequence)
+                break;
+            if (slot.sequence == sequence) {
+                consumer.accept(slot.entry);
+                count++;
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the sequence of the next entry to be added, which equals the number of entries added so far
+     */
+    long getNextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * @return the sequence of the oldest retained entry
+     */
+    long getOldestSequence() {
+        return Math.max(0, nextSequence.get() - capacity);
+    }
+
+    /**
+     * @return the retained entries, oldest first; entries whose writers haven't published them yet are skipped
+     */
+    List<T> getAll() {
+        return stream().collect(toList());
+    }
+
+    /**
+     * @return the retained entries, oldest first, read lazily without copying; entries overwritten while the stream
+     * is consumed are skipped
+     */
+    Stream<T> stream() {
+        return stream(0);
+    }
+
+    /**
+     * @return the retained entries with a sequence of at least the specified one, oldest first, read lazily
+     */
+    Stream<T> stream(long fromSequence) {
+        long end = nextSequence.get();
+        return LongStream.range(Math.max(fromSequence, Math.max(0, end - capacity)), end).mapToObj(this::get)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * @return the entry with the specified sequence, or null if it was overwritten or hasn't been published yet
+     */
+    T get(long sequence) {
+        Slot<T> slot = slots.get((int) (sequence % capacity));
+        return slot != null && slot.sequence == sequence ? slot.entry : null;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of entries which were overwritten or never published since the buffer was full
+     */
+    long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    private static final class Slot<T> {
+        private final long sequence;
+        private final T entry;
+
+        private Slot(long sequence, T entry) {
+            this.sequence = sequence;
+            this.entry = entry;
+        }
+    }
+}
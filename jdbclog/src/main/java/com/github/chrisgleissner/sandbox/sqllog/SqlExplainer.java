@@ -0,0 +1,266 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Runs {@code EXPLAIN} for statements slower than a threshold and attaches the plan to their {@link SqlLogEntry}.
+ * Plans are obtained on a background thread via a separate connection of the unproxied data source, so neither the
+ * query thread nor the {@link SqlLog} sees the {@code EXPLAIN}. The parameters of the first parameter set are bound as
+ * captured. Only single {@code SELECT}, {@code WITH}, {@code INSERT}, {@code UPDATE}, {@code DELETE} and {@code MERGE}
+ * statements are explained; the statement itself isn't executed again.
+ * <p>
+ * Plans are cached per {@link SqlFingerprint}, so each fingerprint is explained once and later slow executions get the
+ * cached plan. New fingerprints are explained at a limited rate and only while the queue of the background thread has
+ * space; those skipped are explained once they are slow again. Fingerprints which fail to be explained are retried
+ * once they are slow again after a minute.
+ * <p>
+ * Since slow statements often coincide with an exhausted connection pool, the {@code EXPLAIN} must not compete with
+ * the application for connections: it is skipped if a Hikari pool has no idle connection, and is cancelled after
+ * {@value #QUERY_TIMEOUT_SECONDS} seconds. Plans are attached on the background thread as well.
+ */
+public class SqlExplainer implements AutoCloseable {
+    public static final long DEFAULT_THRESHOLD_MILLIS = 500;
+    public static final int DEFAULT_MAX_EXPLAINS_PER_SECOND = 10;
+    public static final int DEFAULT_MAX_FINGERPRINTS = 1_000;
+    private static final Logger log = LoggerFactory.getLogger(SqlLog.class);
+    private static final Pattern EXPLAINABLE = Pattern.compile("\\s*(select|insert|update|delete|merge|with)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int QUERY_TIMEOUT_SECONDS = 5;
+    private static final long FAILED_PLAN_TTL_MILLIS = 60_000;
+    private static final boolean HIKARI_PRESENT = ClassUtils.isPresent("com.zaxxer.hikari.HikariDataSource",
+            SqlExplainer.class.getClassLoader());
+
+    private final long thresholdMillis;
+    private final int maxExplainsPerSecond;
+    private final int maxFingerprints;
+    private final long failedPlanTtlNanos;
+    private final ConcurrentHashMap<String, DataSource> dataSourcesByName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Plan> plansByFingerprint = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong windowStartNanos = new AtomicLong(System.nanoTime());
+    private final AtomicInteger windowCount = new AtomicInteger();
+    private final LongAdder skippedCount = new LongAdder();
+
+    public SqlExplainer(long thresholdMillis) {
+        this(thresholdMillis, DEFAULT_MAX_EXPLAINS_PER_SECOND, DEFAULT_MAX_FINGERPRINTS);
+    }
+
+    /**
+     * @param thresholdMillis      elapsed time from which a statement is explained
+     * @param maxExplainsPerSecond maximum number of fingerprints explained per second
+     * @param maxFingerprints      maximum number of cached plans; further fingerprints aren't explained
+     */
+    public SqlExplainer(long thresholdMillis, int maxExplainsPerSecond, int maxFingerprints) {
+        this(thresholdMillis, maxExplainsPerSecond, maxFingerprints, FAILED_PLAN_TTL_MILLIS);
+    }
+
+    SqlExplainer(long thresholdMillis, int maxExplainsPerSecond, int maxFingerprints, long failedPlanTtlMillis) {
+        if (maxExplainsPerSecond < 1)
+            throw new IllegalArgumentException("Max explains per second must be positive, but was " + maxExplainsPerSecond);
+        this.thresholdMillis = thresholdMillis;
+        this.maxExplainsPerSecond = maxExplainsPerSecond;
+        this.maxFingerprints = maxFingerprints;
+        this.failedPlanTtlNanos = TimeUnit.MILLISECONDS.toNanos(failedPlanTtlMillis);
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), task -> {
+            Thread thread = new Thread(task, "sqllog-explain");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers the unproxied data source on which statements executed via the proxy of the same name are explained.
+     */
+    void addDataSource(String name, DataSource dataSource) {
+        dataSourcesByName.put(name, dataSource);
+    }
+
+    /**
+     * Attaches the plan to the entry if the execution was slow, once the plan is available.
+     *
+     * @return whether a plan may be attached to the entry
+     */
+    boolean explain(ExecutionInfo executionInfo, SqlLogEntry entry) {
+        if (executionInfo.getElapsedTime() < thresholdMillis || entry.getQueries().size() != 1
+                || entry.getType() == StatementType.CALLABLE)
+            return false;
+        QueryInfo query = entry.getQueries().get(0);
+        if (!EXPLAINABLE.matcher(query.getQuery()).lookingAt())
+            return false;
+        String fingerprint = entry.getFingerprint();
+        Plan plan = plansByFingerprint.get(fingerprint);
+        if (plan != null && plan.isExpired(System.nanoTime())) {
+            plansByFingerprint.remove(fingerprint, plan);
+            plan = null;
+        }
+        if (plan == null) {
+            DataSource dataSource = dataSourcesByName.get(executionInfo.getDataSourceName());
+            if (dataSource == null || plansByFingerprint.size() >= maxFingerprints || !tryAcquire()) {
+                skippedCount.increment();
+                return false;
+            }
+            Plan newPlan = new Plan();
+            plan = plansByFingerprint.putIfAbsent(fingerprint, newPlan);
+            if (plan == null) {
+                plan = newPlan;
+                try {
+                    executor.execute(() -> explain(fingerprint, newPlan, dataSource, query));
+                } catch (RejectedExecutionException e) {
+                    plansByFingerprint.remove(fingerprint, newPlan);
+                    skippedCount.increment();
+                    return false;
+                }
+            }
+        }
+        try {
+            plan.future.thenAcceptAsync(p -> {
+                if (p != null)
+                    entry.setPlan(p);
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            log.debug("Failed to attach plan of {} since the explainer is busy or closed", fingerprint);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Completes the plan, or removes it if no connection is available, so it is explained once slow again.
+     */
+    private void explain(String fingerprint, Plan plan, DataSource dataSource, QueryInfo query) {
+        if (!hasIdleConnection(dataSource)) {
+            plansByFingerprint.remove(fingerprint, plan);
+            skippedCount.increment();
+            plan.future.complete(null);
+            return;
+        }
+        String explained = explain(dataSource, query);
+        if (explained == null)
+            plan.expiryNanos = System.nanoTime() + failedPlanTtlNanos;
+        plan.future.complete(explained);
+    }
+
+    /**
+     * @return false if the data source is a Hikari pool without idle connection, so that getting one would wait for the
+     * application to return one
+     */
+    private static boolean hasIdleConnection(DataSource dataSource) {
+        return !HIKARI_PRESENT || HikariPools.hasIdleConnection(dataSource);
+    }
+
+    private boolean tryAcquire() {
+        long startNanos = windowStartNanos.get();
+        if (System.nanoTime() - startNanos >= WINDOW_NANOS && windowStartNanos.compareAndSet(startNanos, System.nanoTime()))
+            windowCount.set(0);
+        return windowCount.incrementAndGet() <= maxExplainsPerSecond;
+    }
+
+    /**
+     * @return the plan, or null if the statement can't be explained
+     */
+    private static String explain(DataSource dataSource, QueryInfo query) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("explain " + query.getQuery())) {
+            statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            List<List<ParameterSetOperation>> parametersList = query.getParametersList();
+            if (!parametersList.isEmpty()) {
+                for (ParameterSetOperation parameter : parametersList.get(0))
+                    parameter.getMethod().invoke(statement, parameter.getArgs());
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    plan.append(plan.length() == 0 ? "" : "\n").append(resultSet.getString(1));
+            }
+            return plan.toString();
+        } catch (SQLException | ReflectiveOperationException | RuntimeException e) {
+            log.debug("Failed to explain {}", query.getQuery(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the plan of the fingerprint if it has been explained
+     */
+    public Optional<String> getPlan(String fingerprint) {
+        return Optional.ofNullable(plansByFingerprint.get(fingerprint)).map(plan -> plan.future.getNow(null));
+    }
+
+    /**
+     * @return the number of slow executions of fingerprints without plan which weren't explained
+     */
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    /**
+     * Waits up to 5 seconds until the explains and plan attachments queued so far have run.
+     */
+    void awaitQueued() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture.runAsync(() -> {
+        }, executor).get(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Plan of a fingerprint, completed with null if it can't be explained.
+     */
+    private static final class Plan {
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        /**
+         * Time from which a failed plan is explained again; set before the plan is completed.
+         */
+        private volatile long expiryNanos;
+
+        private boolean isExpired(long nowNanos) {
+            return future.isDone() && future.getNow(null) == null && nowNanos - expiryNanos >= 0;
+        }
+    }
+
+    /**
+     * Isolates the references to Hikari, which is optional.
+     */
+    private static final class HikariPools {
+        private static boolean hasIdleConnection(DataSource dataSource) {
+            if (!(dataSource instanceof HikariDataSource))
+                return true;
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            return pool == null || pool.getIdleConnections() > 0;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.QueryInfo;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Normalizes SQL to a fingerprint which is the same for all executions of a statement: string and numeric literals
+ * are replaced by {@code ?}, comments are removed, whitespace is collapsed, the text is lower-cased and parenthesized
+ * lists consisting only of placeholders, such as IN-lists, are collapsed to {@code (?+)}. For example,
+ * {@code SELECT * FROM t WHERE id IN (1, 2, 3) AND name = 'x'} becomes {@code select * from t where id in (?+) and
+ * name = ?}.
+ */
+public final class SqlFingerprint {
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final int MAX_CACHED_FINGERPRINTS = 4096;
+    private static final ConcurrentMap<String, String> fingerprintsBySql = new ConcurrentHashMap<>();
+
+    private SqlFingerprint() {
+    }
+
+    /**
+     * @return the fingerprint of the specified SQL; cached, since applications execute few distinct statements
+     */
+    public static String of(String sql) {
+        String fingerprint = fingerprintsBySql.get(sql);
+        if (fingerprint == null) {
+            fingerprint = normalize(sql);
+            if (fingerprintsBySql.size() >= MAX_CACHED_FINGERPRINTS)
+                fingerprintsBySql.clear();
+            fingerprintsBySql.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return the fingerprints of the queries of one execution, separated by {@code ; }
+     */
+    public static String of(List<QueryInfo> queryInfos) {
+        if (queryInfos.size() == 1)
+            return of(queryInfos.get(0).getQuery());
+        return queryInfos.stream().map(q -> of(q.getQuery())).collect(joining("; "));
+    }
+
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                sb.append('?');
+            } else if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                sb.append(sql, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < sql.length() && sql.charAt(i + 1) == '-') {
+                i = skipTo(sql, i, "\n");
+                appendSpace(sb);
+            } else if (c == '/' && i + 1 < sql.length() && sql.charAt(i + 1) == '*') {
+                i = skipTo(sql, i + 2, "*/");
+                appendSpace(sb);
+            } else if (Character.isWhitespace(c)) {
+                appendSpace(sb);
+                i++;
+            } else if (Character.isDigit(c) && !isIdentifierPart(sb)) {
+                while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.'))
+                    i++;
+                sb.append('?');
+            } else {
+                sb.append(Character.toLowerCase(c));
+                i++;
+            }
+        }
+        String normalized = sb.toString().trim();
+        return PLACEHOLDER_LIST.matcher(normalized).replaceAll("(?+)");
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote)
+                    i += 2;
+                else
+                    return i + 1;
+            } else
+                i++;
+        }
+        return i;
+    }
+
+    private static int skipTo(String sql, int start, String end) {
+        int i = sql.indexOf(end, start);
+        return i < 0 ? sql.length() : i + end.length();
+    }
+
+    private static void appendSpace(StringBuilder sb) {
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ')
+            sb.append(' ');
+    }
+
+    private static boolean isIdentifierPart(StringBuilder sb) {
+        if (sb.length() == 0)
+            return false;
+        char c = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -0,0 +1,392 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import lombok.Getter;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only journal of {@link SqlLogEntry} records in rolling memory-mapped segment files, so that the statement
+ * history outlives {@link SqlLog#clear()} and restarts without occupying heap. Once the maximum number of segments is
+ * reached, the oldest segment is deleted.
+ * <p>
+ * Each segment starts with a header holding the minimum and maximum timestamp of its entries, followed by
+ * length-prefixed binary entries; a length of 0 marks the end. Since entries of concurrent threads may be appended
+ * slightly out of order, reads skip a segment only if its whole timestamp range lies outside the requested one.
+ * Parameter values are stored as displayed in the JSON of an entry, so entries read back render the same JSON. Entries
+ * are appended by a single writer, usually the thread of an {@link AsyncSqlLogSink}, and may be read concurrently.
+ * Each segment is mapped at most once per journal and the mapping is reused by all reads.
+ */
+public class SqlJournal implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+    private static final int MAGIC = 0x53514C4A;
+    private static final int MIN_TIMESTAMP_OFFSET = 4;
+    private static final int MAX_TIMESTAMP_OFFSET = 12;
+    private static final int HEADER_SIZE = 20;
+    private static final byte BATCH = 1;
+    private static final byte SUCCESS = 2;
+    private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("sqllog-(\\d+)\\.journal");
+    private static final StatementType[] STATEMENT_TYPES = StatementType.values();
+
+    @Getter
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ConcurrentSkipListMap<Long, SegmentFile> segments = new ConcurrentSkipListMap<>();
+    private final LongAdder oversizedCount = new LongAdder();
+    private ByteBuffer record = ByteBuffer.allocate(1024);
+    private volatile Segment current;
+    private volatile boolean closed;
+
+    public SqlJournal(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * @param segmentSize maximum size of a segment file in bytes
+     * @param maxSegments number of segment files retained, including the one being written
+     */
+    public SqlJournal(Path directory, int segmentSize, int maxSegments) {
+        if (segmentSize <= HEADER_SIZE)
+            throw new IllegalArgumentException("Segment size must exceed " + HEADER_SIZE + " bytes, but was " + segmentSize);
+        if (maxSegments < 1)
+            throw new IllegalArgumentException("Max segments must be positive, but was " + maxSegments);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Matcher matcher = SEGMENT_FILE_NAME.matcher(file.getFileName().toString());
+                    if (matcher.matches())
+                        segments.put(Long.parseLong(matcher.group(1)), new SegmentFile(file));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open SQL journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Appends an entry, starting a new segment if it doesn't fit into the current one. Entries larger than a segment
+     * are skipped and counted.
+     */
+    public synchronized void append(SqlLogEntry entry) throws IOException {
+        if (closed)
+            return;
+        encode(entry);
+        int length = record.remaining();
+        if (HEADER_SIZE + 4 + length > segmentSize) {
+            oversizedCount.increment();
+            return;
+        }
+        Segment segment = current;
+        if (segment == null || segment.limit + 4 + length > segmentSize)
+            current = segment = roll();
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.limit;
+        buffer.position(position + 4);
+        buffer.put(record);
+        buffer.putInt(position, length);
+        long timestampMillis = entry.getTimestampMillis();
+        if (timestampMillis < buffer.getLong(MIN_TIMESTAMP_OFFSET))
+            buffer.putLong(MIN_TIMESTAMP_OFFSET, timestampMillis);
+        if (timestampMillis > buffer.getLong(MAX_TIMESTAMP_OFFSET))
+            buffer.putLong(MAX_TIMESTAMP_OFFSET, timestampMillis);
+        segment.limit = position + 4 + length;
+    }
+
+    /**
+     * @return the number of entries which were skipped since they didn't fit into a segment
+     */
+    public long getOversizedCount() {
+        return oversizedCount.sum();
+    }
+
+    /**
+     * @return the journaled entries of all thread ids, oldest first
+     */
+    public Stream<SqlLogEntry> read(long fromMillis, long toMillis) {
+        return read(fromMillis, toMillis, null);
+    }
+
+    public Stream<SqlLogEntry> readForThreadId(String threadId) {
+        return read(Long.MIN_VALUE, Long.MAX_VALUE, threadId);
+    }
+
+    /**
+     * Scans the segments which overlap the time range; entries are decoded lazily and only if they match.
+     *
+     * @param fromMillis inclusive start of the time range in which the entries completed
+     * @param toMillis   exclusive end of the time range
+     * @param threadId   thread id of the entries; null for all thread ids
+     * @return the matching entries, oldest first
+     */
+    public Stream<SqlLogEntry> read(long fromMillis, long toMillis, String threadId) {
+        Segment current = this.current;
+        return new ArrayList<>(segments.entrySet()).stream().flatMap(e -> {
+            ByteBuffer buffer;
+            if (current != null && current.sequence == e.getKey()) {
+                buffer = current.buffer.asReadOnlyBuffer();
+                buffer.limit(current.limit);
+            } else {
+                buffer = e.getValue().getBuffer();
+                if (buffer != null)
+                    buffer = buffer.duplicate();
+            }
+            if (buffer == null || buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                    || buffer.getLong(MIN_TIMESTAMP_OFFSET) >= toMillis || buffer.getLong(MAX_TIMESTAMP_OFFSET) < fromMillis)
+                return Stream.empty();
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                    new EntryIterator(buffer, fromMillis, toMillis, threadId), Spliterator.ORDERED | Spliterator.NONNULL), false);
+        });
+    }
+
+    private Segment roll() throws IOException {
+        Segment previous = current;
+        if (previous != null) {
+            ByteBuffer buffer = previous.buffer.asReadOnlyBuffer();
+            buffer.limit(previous.limit);
+            SegmentFile file = segments.get(previous.sequence);
+            if (file != null)
+                file.buffer = buffer;
+        }
+        long sequence = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        Path file = directory.resolve(String.format("sqllog-%020d.journal", sequence));
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(MIN_TIMESTAMP_OFFSET, Long.MAX_VALUE);
+        buffer.putLong(MAX_TIMESTAMP_OFFSET, Long.MIN_VALUE);
+        segments.put(sequence, new SegmentFile(file));
+        while (segments.size() > maxSegments) {
+            Map.Entry<Long, SegmentFile> oldest = segments.pollFirstEntry();
+            Files.deleteIfExists(oldest.getValue().path);
+        }
+        return new Segment(sequence, buffer);
+    }
+
+    /**
+     * @return the segment file mapped read-only or null if it was deleted
+     */
+    private static MappedByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read SQL journal segment " + file, e);
+        }
+    }
+
+    private void encode(SqlLogEntry entry) {
+        record.clear();
+        putLong(entry.getTimestampMillis());
+        putString(entry.getThreadId());
+        ensureCapacity(1 + 1 + 4 + 8 + 4);
+        record.put((byte) entry.getType().ordinal());
+        record.put((byte) ((entry.isBatch() ? BATCH : 0) | (entry.isSuccess() ? SUCCESS : 0)));
+        record.putInt(entry.getBatchSize());
+        record.putLong(entry.getElapsedTimeMillis());
+        record.putInt(entry.getQueries().size());
+        for (QueryInfo query : entry.getQueries()) {
+            putString(query.getQuery());
+            putInt(query.getParametersList().size());
+            for (List<ParameterSetOperation> parameters : query.getParametersList()) {
+                Map<String, String> displayedParameters = SqlLogEntry.displayParameters(parameters);
+                putInt(displayedParameters.size());
+                for (Map.Entry<String, String> parameter : displayedParameters.entrySet()) {
+                    putString(parameter.getKey());
+                    putString(parameter.getValue());
+                }
+            }
+        }
+        record.flip();
+    }
+
+    private void putInt(int i) {
+        ensureCapacity(4);
+        record.putInt(i);
+    }
+
+    private void putLong(long l) {
+        ensureCapacity(8);
+        record.putLong(l);
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 bytes; a length of -1 denotes null.
+     */
+    private void putString(String s) {
+        if (s == null) {
+            putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF_8);
+        putInt(bytes.length);
+        ensureCapacity(bytes.length);
+        record.put(bytes);
+    }
+
+    private void ensureCapacity(int length) {
+        if (record.remaining() < length) {
+            ByteBuffer record = ByteBuffer.allocate(Math.max(this.record.capacity() * 2, this.record.position() + length));
+            this.record.flip();
+            this.record = record.put(this.record);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    private static SqlLogEntry decode(ByteBuffer buffer, long timestampMillis, String threadId) {
+        StatementType type = STATEMENT_TYPES[buffer.get()];
+        byte flags = buffer.get();
+        int batchSize = buffer.getInt();
+        long elapsedTimeMillis = buffer.getLong();
+        int queryCount = buffer.getInt();
+        List<QueryInfo> queries = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            QueryInfo query = new QueryInfo(getString(buffer));
+            int parameterSetCount = buffer.getInt();
+            List<List<ParameterSetOperation>> parametersList = new ArrayList<>(parameterSetCount);
+            for (int j = 0; j < parameterSetCount; j++) {
+                int parameterCount = buffer.getInt();
+                SqlLogEntry.DisplayedParameters parameters = new SqlLogEntry.DisplayedParameters(parameterCount);
+                for (int k = 0; k < parameterCount; k++)
+                    parameters.add(getString(buffer), getString(buffer));
+                parametersList.add(parameters);
+            }
+            query.setParametersList(parametersList);
+            queries.add(query);
+        }
+        return new SqlLogEntry(threadId, timestampMillis, queries, type, (flags & BATCH) != 0, batchSize,
+                (flags & SUCCESS) != 0, elapsedTimeMillis);
+    }
+
+    /**
+     * Stops appending entries. Segment files are retained, so that a new journal in the same directory can read them.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+
+    /**
+     * Segment file, mapped read-only on its first read unless it was written by this journal.
+     */
+    private static class SegmentFile {
+        private final Path path;
+        private volatile ByteBuffer buffer;
+
+        SegmentFile(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return the entries of the segment, which callers must duplicate before reading them, or null if the file was
+         * deleted
+         */
+        ByteBuffer getBuffer() {
+            ByteBuffer buffer = this.buffer;
+            if (buffer == null)
+                this.buffer = buffer = map(path);
+            return buffer;
+        }
+    }
+
+    private static class Segment {
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        /**
+         * Position after the last entry; written after the entry, so readers up to it see complete entries.
+         */
+        private volatile int limit = HEADER_SIZE;
+
+        Segment(long sequence, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class EntryIterator implements Iterator<SqlLogEntry> {
+        private final ByteBuffer buffer;
+        private final long fromMillis;
+        private final long toMillis;
+        private final String threadId;
+        private SqlLogEntry next;
+
+        EntryIterator(ByteBuffer buffer, long fromMillis, long toMillis, String threadId) {
+            this.buffer = buffer;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.threadId = threadId;
+            buffer.position(HEADER_SIZE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining())
+                    return false;
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                ByteBuffer record = ByteBuffer.wrap(bytes);
+                long timestampMillis = record.getLong();
+                String threadId = getString(record);
+                if (timestampMillis >= fromMillis && timestampMillis < toMillis
+                        && (this.threadId == null || this.threadId.equals(threadId)))
+                    next = decode(record, timestampMillis, threadId);
+            }
+            return next != null;
+        }
+
+        @Override
+        public SqlLogEntry next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            SqlLogEntry entry = next;
+            next = null;
+            return entry;
+        }
+    }
+}
@@ -1,99 +1,485 @@
 package com.github.chrisgleissner.sandbox.sqllog;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.ToString;
-import lombok.extern.slf4j.Slf4j;
 import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
 import net.ttddyy.dsproxy.listener.NoOpQueryExecutionListener;
-import net.ttddyy.dsproxy.listener.logging.DefaultJsonQueryLogEntryCreator;
-import net.ttddyy.dsproxy.listener.logging.QueryLogEntryCreator;
-import net.ttddyy.dsproxy.listener.logging.SLF4JLogLevel;
 import net.ttddyy.dsproxy.proxy.DefaultConnectionIdManager;
 import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 
 import javax.sql.DataSource;
+import java.time.Clock;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.Comparator.comparingLong;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 /**
- * Maintains a log of JDBC statements.
+ * Maintains a log of JDBC statements, captured as {@link SqlLogEntry} records and rendered as JSON when read. The
+ * statements logged per thread id are kept in a {@link RingBuffer}, so only the most recent statements up to a
+ * configurable capacity are retained. Statements are grouped by the thread id of the {@link SqlLogContext} in which
+ * they are executed.
  */
-@Getter
 @ToString
-@Slf4j
-public class SqlLog implements BeanPostProcessor {
-    private final ConnectionLogs connectionLogs = new ConnectionLogs();
-    private final static QueryLogEntryCreator logCreator = new DefaultJsonQueryLogEntryCreator() {
-        protected void writeTimeEntry(StringBuilder sb, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
-        }
-    };
-    private final static InheritableThreadLocal<String> id = new InheritableThreadLocal<String>() {
-        @Override
-        protected String initialValue() {
-            return "default";
+public class SqlLog implements BeanPostProcessor, DisposableBean {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    /**
+     * Default capacity if a {@link SqlJournal} is used, which retains older statements off-heap.
+     */
+    public static final int DEFAULT_JOURNALED_CAPACITY = 1_000;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_IDLE_TTL_MILLIS = 10 * 60 * 1000L;
+    private final ConnectionLogs connectionLogs;
+    private final AsyncSqlLogSink sink;
+    private final SqlStatistics statistics;
+    private final SqlSampler sampler;
+    private final SqlExplainer explainer;
+    private final boolean traceMethods;
+    private final Set<String> dataSourceNames;
+
+    /**
+     * Profile defining the default interception and logging settings.
+     */
+    public enum Profile {
+        /**
+         * Traces all JDBC method calls and logs each statement via SLF4J.
+         */
+        DEVELOPMENT(true, true),
+        /**
+         * Only intercepts statement executions and captures them on completion, without logging them via SLF4J.
+         */
+        PRODUCTION(false, false);
+
+        @Getter
+        private final boolean traceMethods;
+        @Getter
+        private final boolean logging;
+
+        Profile(boolean traceMethods, boolean logging) {
+            this.traceMethods = traceMethods;
+            this.logging = logging;
+        }
+    }
+
+    public SqlLog() {
+        this(builder());
+    }
+
+    private SqlLog(Builder builder) {
+        this.sink = builder.sink == null ? new AsyncSqlLogSink() : builder.sink;
+        this.statistics = builder.statistics;
+        this.sampler = builder.sampler;
+        this.explainer = builder.explainer;
+        this.traceMethods = builder.traceMethods;
+        this.dataSourceNames = new HashSet<>(builder.dataSourceNames);
+        this.connectionLogs = new ConnectionLogs(builder.capacity, sink, sampler, explainer, builder.maxBytes,
+                builder.idleTtlMillis, builder.clock);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds a {@link SqlLog}. All settings are optional; by default, each statement is captured, all JDBC method
+     * calls are traced and all data sources are proxied.
+     */
+    public static class Builder {
+        private int capacity = DEFAULT_CAPACITY;
+        private AsyncSqlLogSink sink;
+        private SqlStatistics statistics;
+        private SqlSampler sampler;
+        private SqlExplainer explainer;
+        private long maxBytes = DEFAULT_MAX_BYTES;
+        private long idleTtlMillis = DEFAULT_IDLE_TTL_MILLIS;
+        private boolean traceMethods = true;
+        private Collection<String> dataSourceNames = emptySet();
+        private Clock clock = Clock.systemUTC();
+
+        private Builder() {
+        }
+
+        /**
+         * @param capacity maximum number of statements retained per thread id
+         */
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param sink sink to which all statements are logged
+         */
+        public Builder sink(AsyncSqlLogSink sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        /**
+         * @param statistics per-fingerprint statistics to maintain for all statements; null to disable them
+         */
+        public Builder statistics(SqlStatistics statistics) {
+            this.statistics = statistics;
+            return this;
+        }
+
+        /**
+         * @param sampler sampler deciding which statements are captured; null to capture all statements
+         */
+        public Builder sampler(SqlSampler sampler) {
+            this.sampler = sampler;
+            return this;
+        }
+
+        /**
+         * @param explainer explainer attaching plans to slow statements; null to not explain statements
+         */
+        public Builder explainer(SqlExplainer explainer) {
+            this.explainer = explainer;
+            return this;
+        }
+
+        /**
+         * @param maxBytes approximate number of heap bytes retained by the statements of all thread ids; once
+         *                 exceeded, the least recently used thread ids are evicted
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param idleTtlMillis time after which a thread id without new or read statements is evicted; 0 to never
+         *                      evict idle thread ids
+         */
+        public Builder idleTtlMillis(long idleTtlMillis) {
+            this.idleTtlMillis = idleTtlMillis;
+            return this;
+        }
+
+        /**
+         * @param traceMethods whether all JDBC method calls are intercepted, rather than only statement executions
+         */
+        public Builder traceMethods(boolean traceMethods) {
+            this.traceMethods = traceMethods;
+            return this;
         }
-    };
 
+        /**
+         * @param dataSourceNames names of the data source beans to proxy; empty to proxy all data sources
+         */
+        public Builder dataSourceNames(Collection<String> dataSourceNames) {
+            this.dataSourceNames = dataSourceNames;
+            return this;
+        }
+
+        /**
+         * @param clock clock by which statements are timestamped and thread ids are evicted
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public SqlLog build() {
+            return new SqlLog(this);
+        }
+    }
+
+    public Optional<SqlStatistics> getStatistics() {
+        return Optional.ofNullable(statistics);
+    }
+
+    public Optional<SqlSampler> getSampler() {
+        return Optional.ofNullable(sampler);
+    }
+
+    public Optional<SqlExplainer> getExplainer() {
+        return Optional.ofNullable(explainer);
+    }
+
+    /**
+     * @return the journal retaining all statements, including those no longer retained per thread id
+     */
+    public Optional<SqlJournal> getJournal() {
+        return sink.getJournal();
+    }
+
+    public ConnectionLogs getConnectionLogs() {
+        return connectionLogs;
+    }
+
+    /**
+     * Sets the thread id of the current thread until it is set again. Prefer {@link SqlLogContext#open(String)},
+     * which restores the previous id, on pooled threads.
+     */
     public void setThreadId(String id) {
-        SqlLog.id.set(id);
+        SqlLogContext.set(id);
     }
 
     public Collection<String> getAndClearLogsForThreadId(String id) {
-        return connectionLogs.logsById.remove(id).getAll();
+        return Optional.ofNullable(connectionLogs.remove(id)).map(ConnectionLog::getAll).orElse(emptyList());
     }
 
     public Collection<String> getLogsForThreadId(String id) {
-        return Optional.ofNullable(connectionLogs.logsById.get(id)).map(ConnectionLog::getAll).orElse(emptyList());
+        return Optional.ofNullable(connectionLogs.get(id)).map(ConnectionLog::getAll).orElse(emptyList());
     }
 
     public Collection<String> getLogsContainingRegex(String regex) {
-        Pattern pattern = Pattern.compile(regex);
-        return getLogs(v -> v.getAll().stream().anyMatch(s -> pattern.matcher(s).find()));
+        return streamLogsContainingRegex(regex).collect(toList());
     }
 
     public Collection<String> getLogsContaining(String expectedString) {
-        return getLogs(v -> v.getAll().stream().anyMatch(s -> s.contains(expectedString)));
+        return streamLogsContaining(expectedString).collect(toList());
+    }
+
+    /**
+     * Matches the JSON of the entries which the index of each log finds to contain all words of the regex, if it
+     * consists only of words, {@code .} and quantifiers, otherwise of all entries.
+     *
+     * @return the logs of all thread ids with at least one log in which the regex is found
+     */
+    public Stream<String> streamLogsContainingRegex(String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        return streamLogs(SqlLogIndex.Query.ofRegex(regex), json -> pattern.matcher(json).find());
+    }
+
+    /**
+     * Matches the JSON of the entries which the index of each log finds to contain all words of the expected string.
+     *
+     * @return the logs of all thread ids with at least one log containing the expected string
+     */
+    public Stream<String> streamLogsContaining(String expectedString) {
+        return streamLogs(SqlLogIndex.Query.of(expectedString), json -> json.contains(expectedString));
+    }
+
+    private Stream<String> streamLogs(SqlLogIndex.Query query, Predicate<String> predicate) {
+        return connectionLogs.logsById.values().stream().flatMap(l -> l.streamIfAnyMatches(query, predicate));
+    }
+
+    /**
+     * @return all retained entries; see {@link #streamEntries(StatementType)} and
+     * {@link #streamEntriesReferencing(String)} to find them by type or table
+     */
+    public Stream<SqlLogEntry> streamEntries() {
+        return connectionLogs.logsById.values().stream().flatMap(ConnectionLog::streamEntries);
+    }
+
+    /**
+     * @return the retained entries of the statement type, as found by the index of each log
+     */
+    public Stream<SqlLogEntry> streamEntries(StatementType type) {
+        return connectionLogs.logsById.values().stream().flatMap(l -> l.streamEntries(type));
+    }
+
+    /**
+     * @return the retained entries whose queries reference the table, as found by the index of each log
+     * @see SqlLogEntry#getTables()
+     */
+    public Stream<SqlLogEntry> streamEntriesReferencing(String table) {
+        String lowerCaseTable = table.toLowerCase(Locale.ROOT);
+        return connectionLogs.logsById.values().stream().flatMap(l -> l.streamEntriesReferencing(lowerCaseTable));
+    }
+
+    /**
+     * @return the retained entries of the specified thread id, oldest first
+     */
+    public Stream<SqlLogEntry> streamEntriesForThreadId(String id) {
+        return Optional.ofNullable(connectionLogs.get(id)).map(ConnectionLog::streamEntries).orElse(Stream.empty());
+    }
+
+    /**
+     * @return the entries of the specified thread id with a sequence of at least the specified one, oldest first,
+     * read lazily without copying
+     */
+    public Stream<SqlLogEntry> streamEntriesForThreadId(String id, long fromSequence) {
+        return Optional.ofNullable(connectionLogs.get(id)).map(l -> l.streamEntries(fromSequence)).orElse(Stream.empty());
+    }
+
+    /**
+     * Reads up to the specified number of entries of a thread id, starting at the specified sequence. If the thread id
+     * was evicted and has since logged new entries, whose sequences start again at 0, reading starts at its oldest
+     * entry.
+     */
+    public SqlLogPage getPageForThreadId(String id, long fromSequence, int maxEntries) {
+        ConnectionLog log = connectionLogs.get(id);
+        return log == null ? new SqlLogPage(emptyList(), fromSequence, 0) : log.getPage(fromSequence, maxEntries);
     }
 
-    private Collection<String> getLogs(Predicate<ConnectionLog> predicate) {
-        return connectionLogs.logsById.values().stream()
-                .filter(predicate)
-                .flatMap(l -> l.getAll().stream()).collect(toList());
+    /**
+     * @return the logs of all thread ids, read lazily without copying
+     */
+    public Stream<String> streamLogs() {
+        return streamEntries().map(SqlLogEntry::toJson);
     }
 
     public Collection<String> getLogs() {
-        return connectionLogs.logsById.values().stream().flatMap(l -> l.getAll().stream()).collect(toList());
+        return streamLogs().collect(toList());
+    }
+
+    /**
+     * @return the number of statements which were dropped since the capacity of their thread id was exceeded
+     */
+    public long getDroppedCount() {
+        return connectionLogs.logsById.values().stream().mapToLong(ConnectionLog::getDroppedCount).sum();
+    }
+
+    /**
+     * @return the approximate number of heap bytes retained by the statements of all thread ids
+     */
+    public long getEstimatedBytes() {
+        return connectionLogs.totalBytes.get();
+    }
+
+    /**
+     * @return the number of thread ids which were evicted since they were idle or the least recently used
+     */
+    public long getEvictedCount() {
+        return connectionLogs.evictedCount.sum();
     }
 
     public void clear() {
         connectionLogs.clear();
     }
 
+    /**
+     * Statement logs by thread id. Thread ids are evicted when idle for longer than the idle TTL, and the least
+     * recently used ones when their estimated size exceeds the byte budget, down to 90% of the budget. Both checks run
+     * on a query thread: the TTL at most once per second or per TTL, if shorter, the budget whenever it is exceeded.
+     * <p>
+     * Statements are added to a log while holding its map entry, and logs are only removed via the map, so a statement
+     * is never added to a log after it was evicted or removed. The total size is only ever adjusted by the change of a
+     * log's size, so concurrent adds and evictions are all counted.
+     */
     public static class ConnectionLogs extends NoOpQueryExecutionListener implements Iterable<SqlLog.ConnectionLog> {
-        private ConcurrentHashMap<String, ConnectionLog> logsById = new ConcurrentHashMap<>();
+        private static final long EVICTION_INTERVAL_MILLIS = 1000;
+        private final int capacity;
+        private final AsyncSqlLogSink sink;
+        private final SqlSampler sampler;
+        private final SqlExplainer explainer;
+        private final long maxBytes;
+        private final long idleTtlMillis;
+        private final Clock clock;
+        private final ConcurrentHashMap<String, ConnectionLog> logsById = new ConcurrentHashMap<>();
+        private final AtomicLong totalBytes = new AtomicLong();
+        private final AtomicBoolean evicting = new AtomicBoolean();
+        private final LongAdder evictedCount = new LongAdder();
+        private volatile long lastEvictionMillis;
+
+        ConnectionLogs(int capacity, AsyncSqlLogSink sink, SqlSampler sampler, SqlExplainer explainer, long maxBytes,
+                       long idleTtlMillis, Clock clock) {
+            this.capacity = capacity;
+            this.sink = sink;
+            this.sampler = sampler;
+            this.explainer = explainer;
+            this.maxBytes = maxBytes;
+            this.idleTtlMillis = idleTtlMillis;
+            this.clock = clock;
+            this.lastEvictionMillis = clock.millis();
+        }
 
         @Override
         public void afterQuery(ExecutionInfo executionInfo, List<QueryInfo> list) {
-            String logMsg = logCreator.getLogEntry(executionInfo, list, false, false);
-            String currentId = id.get();
-            logsById.computeIfAbsent(currentId, ConnectionLog::new).add(logMsg);
-            log.info("{}: {}", currentId, logMsg);
+            if (sampler != null && !sampler.sample(executionInfo, list))
+                return;
+            String currentId = SqlLogContext.getThreadId();
+            SqlLogEntry entry = SqlLogEntry.of(currentId, clock.millis(), executionInfo, list);
+            long nowMillis = entry.getTimestampMillis();
+            boolean explainable = explainer != null && explainer.explain(executionInfo, entry);
+            long[] addedBytes = new long[1];
+            logsById.compute(currentId, (threadId, log) -> {
+                if (log == null)
+                    log = new ConnectionLog(threadId, capacity, nowMillis);
+                addedBytes[0] = log.add(entry, explainable);
+                return log;
+            });
+            long totalBytes = this.totalBytes.addAndGet(addedBytes[0]);
+            if (totalBytes > maxBytes || idleTtlMillis > 0 && nowMillis - lastEvictionMillis >= Math.min(idleTtlMillis, EVICTION_INTERVAL_MILLIS))
+                evict(nowMillis);
+            sink.accept(entry);
+        }
+
+        ConnectionLog get(String id) {
+            ConnectionLog log = logsById.get(id);
+            if (log != null)
+                log.lastAccessMillis = clock.millis();
+            return log;
+        }
+
+        ConnectionLog remove(String id) {
+            ConnectionLog log = logsById.remove(id);
+            if (log != null)
+                totalBytes.addAndGet(-log.getEstimatedBytes());
+            return log;
+        }
+
+        /**
+         * Evicts idle thread ids and, if the byte budget is exceeded, the least recently used ones. The logs are
+         * selected by a snapshot of their sizes, but the total size is adjusted by the size of each log once evicted.
+         */
+        private void evict(long nowMillis) {
+            if (!evicting.compareAndSet(false, true))
+                return;
+            try {
+                lastEvictionMillis = nowMillis;
+                long totalBytes = 0;
+                List<SimpleEntry<Long, ConnectionLog>> logs = new ArrayList<>(logsById.size());
+                for (ConnectionLog log : logsById.values()) {
+                    long lastAccessMillis = log.lastAccessMillis;
+                    if (idleTtlMillis > 0 && nowMillis - lastAccessMillis > idleTtlMillis)
+                        evict(log);
+                    else {
+                        totalBytes += log.getEstimatedBytes();
+                        logs.add(new SimpleEntry<>(lastAccessMillis, log));
+                    }
+                }
+                if (totalBytes > maxBytes) {
+                    logs.sort(comparingLong(Map.Entry<Long, ConnectionLog>::getKey));
+                    long targetBytes = maxBytes - maxBytes / 10;
+                    for (int i = 0; i < logs.size() && totalBytes > targetBytes; i++)
+                        totalBytes -= evict(logs.get(i).getValue());
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+
+        /**
+         * @return the estimated size of the log if it was evicted, or 0 if it was removed concurrently
+         */
+        private long evict(ConnectionLog log) {
+            if (!logsById.remove(log.getId(), log))
+                return 0;
+            evictedCount.increment();
+            long bytes = log.getEstimatedBytes();
+            totalBytes.addAndGet(-bytes);
+            return bytes;
         }
 
         public String toString() {
@@ -107,40 +493,182 @@ public class SqlLog implements BeanPostProcessor {
         }
 
         public void clear() {
-            logsById.clear();
+            for (String id : logsById.keySet())
+                remove(id);
         }
     }
 
-    @RequiredArgsConstructor
+    /**
+     * Retained statements of a thread id, together with their {@link SqlLogIndex index}. Statements are added and
+     * indexed while holding the index, so that the index holds the sequences of exactly the retained statements;
+     * reading the statements doesn't block adding them.
+     */
     public static class ConnectionLog {
+        /**
+         * Approximate number of heap bytes retained by each sequence held by the index.
+         */
+        private static final int INDEXED_SEQUENCE_SIZE = 16;
 
         @Getter
         private final String id;
-        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-        private final List<String> logs = new LinkedList<>();
+        private final RingBuffer<SqlLogEntry> logs;
+        private final SqlLogIndex index;
+        private final AtomicLong estimatedBytes = new AtomicLong();
+        /**
+         * Time at which statements were last added or read by thread id.
+         */
+        @Getter
+        private volatile long lastAccessMillis;
 
-        public void add(String msg) {
-            lock.writeLock().lock();
-            try {
-                logs.add(msg);
-            } finally {
-                lock.writeLock().unlock();
+        public ConnectionLog(String id, int capacity) {
+            this(id, capacity, System.currentTimeMillis());
+        }
+
+        ConnectionLog(String id, int capacity, long nowMillis) {
+            this.id = id;
+            this.logs = new RingBuffer<>(capacity);
+            this.index = new SqlLogIndex(capacity);
+            this.lastAccessMillis = nowMillis;
+        }
+
+        /**
+         * @return the change of the estimated size of this log
+         */
+        public long add(SqlLogEntry entry) {
+            return add(entry, false);
+        }
+
+        /**
+         * @param explainable whether a plan may be attached to the entry, which makes it a candidate of every search
+         * @return the change of the estimated size of this log
+         */
+        long add(SqlLogEntry entry, boolean explainable) {
+            lastAccessMillis = entry.getTimestampMillis();
+            long addedBytes;
+            synchronized (index) {
+                SqlLogEntry droppedEntry = logs.add(entry);
+                addedBytes = entry.getEstimatedSize() - (droppedEntry == null ? 0 : droppedEntry.getEstimatedSize())
+                        + (long) INDEXED_SEQUENCE_SIZE * index.add(entry, explainable);
             }
+            estimatedBytes.addAndGet(addedBytes);
+            return addedBytes;
         }
 
-        public Collection<String> getAll() {
-            lock.readLock().lock();
-            try {
-                return new ArrayList<>(logs);
-            } finally {
-                lock.readLock().unlock();
+        /**
+         * @return the approximate number of heap bytes retained by the statements of this log
+         */
+        public long getEstimatedBytes() {
+            return estimatedBytes.get();
+        }
+
+        /**
+         * @return the retained entries, oldest first
+         */
+        public List<SqlLogEntry> getEntries() {
+            return logs.getAll();
+        }
+
+        /**
+         * @return the retained entries, oldest first, without copying them
+         */
+        public Stream<SqlLogEntry> streamEntries() {
+            return logs.stream();
+        }
+
+        /**
+         * @return the retained entries with a sequence of at least the specified one, oldest first, without copying
+         * them
+         */
+        public Stream<SqlLogEntry> streamEntries(long fromSequence) {
+            return logs.stream(fromSequence);
+        }
+
+        /**
+         * @return the retained entries of the statement type, oldest first
+         */
+        public Stream<SqlLogEntry> streamEntries(StatementType type) {
+            long[] sequences;
+            synchronized (index) {
+                sequences = index.findType(type);
+            }
+            return streamEntries(sequences);
+        }
+
+        /**
+         * @return the retained entries whose queries reference the lower-cased table, oldest first
+         */
+        public Stream<SqlLogEntry> streamEntriesReferencing(String table) {
+            long[] sequences;
+            synchronized (index) {
+                sequences = index.findTable(table);
+            }
+            return streamEntries(sequences);
+        }
+
+        private Stream<SqlLogEntry> streamEntries(long[] sequences) {
+            return Arrays.stream(sequences).mapToObj(logs::get).filter(Objects::nonNull);
+        }
+
+        /**
+         * Reads the retained entries in a single pass, matching the JSON of the candidates found by the index until
+         * one matches.
+         *
+         * @return the JSON of the retained entries, oldest first, if the JSON of any of them matches; else empty
+         */
+        Stream<String> streamIfAnyMatches(SqlLogIndex.Query query, Predicate<String> predicate) {
+            long[] candidates;
+            synchronized (index) {
+                candidates = index.find(query);
             }
+            if (candidates.length == 0)
+                return Stream.empty();
+            List<SqlLogEntry> entries = new ArrayList<>();
+            boolean matched = false;
+            int candidate = 0;
+            long end = logs.getNextSequence();
+            for (long sequence = logs.getOldestSequence(); sequence < end; sequence++) {
+                SqlLogEntry entry = logs.get(sequence);
+                if (entry == null)
+                    continue;
+                entries.add(entry);
+                while (!matched && candidate < candidates.length && candidates[candidate] < sequence)
+                    candidate++;
+                if (!matched && candidate < candidates.length && candidates[candidate] == sequence)
+                    matched = predicate.test(entry.toJson());
+            }
+            return matched ? entries.stream().map(SqlLogEntry::toJson) : Stream.empty();
+        }
+
+        /**
+         * @return up to the specified number of entries, starting at the specified sequence or at the oldest entry if
+         * the sequence lies ahead of this log
+         */
+        public SqlLogPage getPage(long fromSequence, int maxEntries) {
+            if (fromSequence > logs.getNextSequence())
+                fromSequence = 0;
+            long oldestSequence = logs.getOldestSequence();
+            List<SqlLogEntry> entries = new ArrayList<>(Math.min(maxEntries, logs.getCapacity()));
+            long nextSequence = logs.read(fromSequence, maxEntries, entries::add);
+            return new SqlLogPage(entries, nextSequence, Math.max(0, oldestSequence - fromSequence));
+        }
+
+        /**
+         * @return the retained entries rendered as JSON, oldest first
+         */
+        public Collection<String> getAll() {
+            return streamEntries().map(SqlLogEntry::toJson).collect(toList());
+        }
+
+        public long getDroppedCount() {
+            return logs.getDroppedCount();
         }
 
         public String toString() {
-            Collection<String> msgs = getAll();
-            return String.format("ConnectionLog(%s, count=%s):%s", id, msgs.size(),
-                    msgs.isEmpty() ? " empty" : "\n" + msgs.stream().collect(joining("\n")));
+            StringBuilder msgs = new StringBuilder();
+            int count = 0;
+            for (Iterator<SqlLogEntry> entries = streamEntries().iterator(); entries.hasNext(); count++)
+                msgs.append('\n').append(entries.next().toJson());
+            return String.format("ConnectionLog(%s, count=%s):%s", id, count, count == 0 ? " empty" : msgs);
         }
     }
 
@@ -151,10 +679,28 @@ public class SqlLog implements BeanPostProcessor {
 
     @Override
     public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
-        return bean instanceof DataSource ? ProxyDataSourceBuilder.create((DataSource) bean)
-                .connectionIdManager(new DefaultConnectionIdManager())
-                .traceMethods()
-                .logQueryBySlf4j(SLF4JLogLevel.INFO)
-                .listener(connectionLogs).build() : bean;
+        if (!(bean instanceof DataSource) || !dataSourceNames.isEmpty() && !dataSourceNames.contains(beanName))
+            return bean;
+        ProxyDataSourceBuilder builder = ProxyDataSourceBuilder.create((DataSource) bean)
+                .connectionIdManager(new DefaultConnectionIdManager());
+        // Listeners are called in registration order both before and after a statement, so the statistics measure
+        // the statement without the time taken to capture it
+        if (statistics != null)
+            builder.listener(statistics);
+        builder.listener(connectionLogs);
+        if (explainer != null) {
+            explainer.addDataSource(beanName, (DataSource) bean);
+            builder.name(beanName);
+        }
+        if (traceMethods)
+            builder.traceMethods();
+        return builder.build();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (explainer != null)
+            explainer.close();
+        sink.close();
     }
 }
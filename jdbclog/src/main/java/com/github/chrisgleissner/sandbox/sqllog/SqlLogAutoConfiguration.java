@@ -1,16 +1,54 @@
 package com.github.chrisgleissner.sandbox.sqllog;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jms.activemq.ActiveMQAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
 
 @Configuration
-@ConditionalOnProperty(value = "com.github.chrisgleissner.sandbox.sqllog")
+@ConditionalOnProperty(value = SqlLogProperties.PREFIX)
+@EnableConfigurationProperties(SqlLogProperties.class)
 public class SqlLogAutoConfiguration extends ActiveMQAutoConfiguration {
 
     @Bean
-    SqlLog jdbcLog() {
-        return new SqlLog();
+    SqlLog jdbcLog(SqlLogProperties properties) {
+        SqlLogProperties.Journal journalProperties = properties.getJournal();
+        SqlJournal journal = journalProperties.getDirectory() == null ? null : new SqlJournal(
+                journalProperties.getDirectory(), journalProperties.getSegmentSize(), journalProperties.getMaxSegments());
+        Integer capacity = properties.getCapacity();
+        SqlLog.Profile profile = properties.getProfile();
+        SqlLogProperties.Sink sink = properties.getSink();
+        SqlLogProperties.Sampling sampling = properties.getSampling();
+        SqlLogProperties.Explain explain = properties.getExplain();
+        return SqlLog.builder()
+                .capacity(capacity != null ? capacity
+                        : journal == null ? SqlLog.DEFAULT_CAPACITY : SqlLog.DEFAULT_JOURNALED_CAPACITY)
+                .sink(new AsyncSqlLogSink(sink.getQueueCapacity(), sink.getFullQueuePolicy(), journal,
+                        sink.getLogging() == null ? profile.isLogging() : sink.getLogging()))
+                .statistics(properties.getStatistics().isEnabled()
+                        ? new SqlStatistics(properties.getStatistics().getMaxFingerprints()) : null)
+                .sampler(sampling.getMaxEntriesPerSecond() > 0 ? new SqlSampler(sampling.getMaxEntriesPerSecond(),
+                        sampling.getSlowThresholdMillis(), sampling.getFirstOccurrences(), sampling.getMaxFingerprints())
+                        : null)
+                .explainer(explain.isEnabled() ? new SqlExplainer(explain.getThresholdMillis(),
+                        explain.getMaxPerSecond(), explain.getMaxFingerprints()) : null)
+                .maxBytes(properties.getMaxBytes())
+                .idleTtlMillis(properties.getIdleTtlMillis())
+                .traceMethods(properties.getTraceMethods() == null ? profile.isTraceMethods() : properties.getTraceMethods())
+                .dataSourceNames(properties.getDataSourceNames())
+                .build();
+    }
+
+    /**
+     * Carries the {@link SqlLogContext} thread id to {@code @Async} methods and other tasks of the auto-configured
+     * task executor.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    TaskDecorator sqlLogTaskDecorator() {
+        return SqlLogContext.taskDecorator();
     }
 }
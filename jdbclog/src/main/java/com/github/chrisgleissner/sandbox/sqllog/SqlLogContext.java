@@ -0,0 +1,123 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Thread id by which {@link SqlLog} groups the statements executed by the current thread. The id is set for a scope
+ * and carried to other threads explicitly by wrapping tasks or executors, which capture the id when a task is
+ * submitted and set it only while the task runs:
+ * <pre>{@code
+ * try (SqlLogContext.Scope scope = SqlLogContext.open(requestId)) {
+ *     CompletableFuture.supplyAsync(repository::findAll, SqlLogContext.wrap(executor));
+ * }
+ * }</pre>
+ * Since ids aren't inherited by new threads nor left behind on pooled threads, statements are attributed to the id
+ * of the task that executes them. Threads outside any scope use {@link #DEFAULT_THREAD_ID}; they don't hold a
+ * thread-local value, so neither creating nor running many short-lived or virtual threads copies or retains ids.
+ */
+public final class SqlLogContext {
+    public static final String DEFAULT_THREAD_ID = "default";
+    private static final ThreadLocal<String> threadId = new ThreadLocal<>();
+
+    private SqlLogContext() {
+    }
+
+    public static String getThreadId() {
+        String id = threadId.get();
+        return id == null ? DEFAULT_THREAD_ID : id;
+    }
+
+    /**
+     * Sets the id of the current thread until the returned scope is closed, which restores the previous id.
+     */
+    public static Scope open(String id) {
+        String previousId = threadId.get();
+        set(id);
+        return new Scope(previousId);
+    }
+
+    /**
+     * Sets the id of the current thread without restoring the previous one. Prefer {@link #open(String)} on pooled
+     * threads, which otherwise keep the id for later tasks.
+     */
+    static void set(String id) {
+        if (id == null)
+            threadId.remove();
+        else
+            threadId.set(id);
+    }
+
+    /**
+     * @return a runnable which runs the task with the id of the current thread
+     */
+    public static Runnable wrap(Runnable task) {
+        String id = threadId.get();
+        return () -> {
+            try (Scope scope = open(id)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * @return a callable which calls the task with the id of the current thread
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        String id = threadId.get();
+        return () -> {
+            try (Scope scope = open(id)) {
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * @return a supplier which invokes the supplier with the id of the current thread, e.g. for
+     * {@link CompletableFuture#supplyAsync(Supplier)}
+     */
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        String id = threadId.get();
+        return () -> {
+            try (Scope scope = open(id)) {
+                return supplier.get();
+            }
+        };
+    }
+
+    /**
+     * @return an executor which runs each task with the id of the thread submitting it. Passed to the async methods
+     * of {@link CompletableFuture}, dependent stages run with the id of the stage they depend on.
+     */
+    public static Executor wrap(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * @return a decorator carrying the id to tasks run by Spring task executors, such as those of {@code @Async}
+     * methods
+     */
+    public static TaskDecorator taskDecorator() {
+        return SqlLogContext::wrap;
+    }
+
+    /**
+     * Scope of an id set by {@link #open(String)}, which is closed by the thread which opened it.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final String previousId;
+
+        private Scope(String previousId) {
+            this.previousId = previousId;
+        }
+
+        @Override
+        public void close() {
+            set(previousId);
+        }
+    }
+}
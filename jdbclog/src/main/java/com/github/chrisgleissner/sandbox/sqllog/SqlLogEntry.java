@@ -0,0 +1,303 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.listener.logging.DefaultJsonQueryLogEntryCreator;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Record of a statement execution captured by {@link SqlLog}. Since most captured statements are never read, the
+ * record only references the query texts and parameter values; it is rendered as JSON when first read.
+ * Parameter values are rendered as of that time, but indexed for searches as of the capture. The plan of a slow
+ * statement may be attached by a {@link SqlExplainer} after the entry was captured.
+ */
+@Getter
+public final class SqlLogEntry {
+    private static final JsonLogEntryCreator logCreator = new JsonLogEntryCreator();
+    private static final int MAX_CACHED_QUERY_INDICES = 4096;
+    private static final int ENTRY_SIZE = 128;
+    private static final int QUERY_SIZE = 96;
+    private static final int PARAMETER_SET_SIZE = 32;
+    private static final int PARAMETER_SIZE = 64;
+    private static final ConcurrentMap<String, QueryIndex> queryIndicesBySql = new ConcurrentHashMap<>();
+
+    private final String threadId;
+    /**
+     * Time at which the execution completed.
+     */
+    private final long timestampMillis;
+    private final List<QueryInfo> queries;
+    private final StatementType type;
+    private final boolean batch;
+    private final int batchSize;
+    private final boolean success;
+    private final long elapsedTimeMillis;
+    /**
+     * Approximate number of heap bytes retained by this entry, counting query texts and parameters but not the
+     * parameter values themselves, nor the JSON memoized once the entry is read. The sink renders entries without
+     * memoizing their JSON, so only entries which are read or searched retain it.
+     */
+    private final int estimatedSize;
+    /**
+     * Execution plan of the statement; null unless explained.
+     */
+    private volatile String plan;
+    /**
+     * JSON memoized by {@link #toJson()}; null until then.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private volatile String json;
+
+    SqlLogEntry(String threadId, long timestampMillis, List<QueryInfo> queries, StatementType type, boolean batch,
+                int batchSize, boolean success, long elapsedTimeMillis) {
+        this.threadId = threadId;
+        this.timestampMillis = timestampMillis;
+        this.queries = queries;
+        this.type = type;
+        this.batch = batch;
+        this.batchSize = batchSize;
+        this.success = success;
+        this.elapsedTimeMillis = elapsedTimeMillis;
+        this.estimatedSize = estimateSize(threadId, queries);
+    }
+
+    private static int estimateSize(String threadId, List<QueryInfo> queries) {
+        int size = ENTRY_SIZE + 2 * threadId.length();
+        for (QueryInfo query : queries) {
+            size += QUERY_SIZE + 2 * query.getQuery().length();
+            for (List<ParameterSetOperation> parameters : query.getParametersList())
+                size += PARAMETER_SET_SIZE + PARAMETER_SIZE * parameters.size();
+        }
+        return size;
+    }
+
+    /**
+     * Captures an execution. Parameter lists are copied since a statement may clear them after a batch, but their
+     * values aren't.
+     */
+    static SqlLogEntry of(String threadId, long timestampMillis, ExecutionInfo executionInfo,
+                          List<QueryInfo> queryInfos) {
+        List<QueryInfo> queries = new ArrayList<>(queryInfos.size());
+        for (QueryInfo queryInfo : queryInfos) {
+            QueryInfo query = new QueryInfo(queryInfo.getQuery());
+            List<List<ParameterSetOperation>> parametersList = new ArrayList<>(queryInfo.getParametersList().size());
+            for (List<ParameterSetOperation> parameters : queryInfo.getParametersList())
+                parametersList.add(new ArrayList<>(parameters));
+            query.setParametersList(parametersList);
+            queries.add(query);
+        }
+        return new SqlLogEntry(threadId, timestampMillis, queries, executionInfo.getStatementType(),
+                executionInfo.isBatch(), executionInfo.getBatchSize(), executionInfo.isSuccess(),
+                executionInfo.getElapsedTime());
+    }
+
+    /**
+     * Renders the JSON on first use and memoizes it. If a plan is attached meanwhile, the memoized JSON is discarded
+     * again, since it may have been rendered without the plan.
+     */
+    public String toJson() {
+        String json = this.json;
+        if (json == null) {
+            String plan = this.plan;
+            this.json = json = render(plan);
+            if (this.plan != plan)
+                this.json = null;
+        }
+        return json;
+    }
+
+    /**
+     * Renders the JSON without memoizing it, for entries which are rendered only once, e.g. by the sink.
+     */
+    String renderJson() {
+        String json = this.json;
+        return json == null ? render(plan) : json;
+    }
+
+    private String render(String plan) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setStatementType(type);
+        executionInfo.setBatch(batch);
+        executionInfo.setBatchSize(batchSize);
+        executionInfo.setSuccess(success);
+        executionInfo.setElapsedTime(elapsedTimeMillis);
+        String json = logCreator.getLogEntry(executionInfo, queries, false, false);
+        if (plan != null)
+            json = json.substring(0, json.length() - 1) + ", \"plan\":\"" + logCreator.escape(plan) + "\"}";
+        return json;
+    }
+
+    /**
+     * Attaches the plan, which is rendered as part of the JSON from now on. The plan is set before the memoized JSON
+     * is cleared, so JSON rendered concurrently without the plan is either discarded by its renderer, which rechecks
+     * the plan, or cleared here.
+     */
+    void setPlan(String plan) {
+        this.plan = plan;
+        this.json = null;
+    }
+
+    public String getFingerprint() {
+        return SqlFingerprint.of(queries);
+    }
+
+    /**
+     * @return the displayed values of all parameters, ordered by query, parameter set and parameter key
+     */
+    public List<String> getParameterValues() {
+        List<String> values = new ArrayList<>();
+        for (QueryInfo query : queries) {
+            for (List<ParameterSetOperation> parameters : query.getParametersList())
+                values.addAll(displayParameters(parameters).values());
+        }
+        return values;
+    }
+
+    /**
+     * @return the lower-cased names of the tables referenced by the queries
+     */
+    public Set<String> getTables() {
+        if (queries.size() == 1)
+            return queryIndex(queries.get(0).getQuery()).tables;
+        Set<String> tables = new LinkedHashSet<>();
+        for (QueryInfo query : queries)
+            tables.addAll(queryIndex(query.getQuery()).tables);
+        return tables;
+    }
+
+    /**
+     * @return the words of the JSON of this entry which vary between entries, i.e. those of the query texts, parameters
+     * and sizes; the words of the plan aren't included
+     */
+    Set<String> getWords() {
+        Set<String> words = new HashSet<>();
+        words.add(String.valueOf(queries.size()));
+        words.add(String.valueOf(batchSize));
+        for (QueryInfo query : queries) {
+            words.addAll(queryIndex(query.getQuery()).words);
+            for (List<ParameterSetOperation> parameters : query.getParametersList()) {
+                for (Map.Entry<String, String> parameter : displayParameters(parameters).entrySet()) {
+                    SqlLogIndex.addWords(parameter.getKey(), words);
+                    SqlLogIndex.addWords(logCreator.escape(parameter.getValue()), words);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @return the displayed values of the parameters of one parameter set by their displayed keys, i.e. their indices
+     * or names
+     */
+    static SortedMap<String, String> displayParameters(List<ParameterSetOperation> parameters) {
+        return logCreator.getParametersToDisplay(parameters);
+    }
+
+    private static QueryIndex queryIndex(String sql) {
+        QueryIndex queryIndex = queryIndicesBySql.get(sql);
+        if (queryIndex == null) {
+            queryIndex = new QueryIndex(sql);
+            if (queryIndicesBySql.size() >= MAX_CACHED_QUERY_INDICES)
+                queryIndicesBySql.clear();
+            queryIndicesBySql.put(sql, queryIndex);
+        }
+        return queryIndex;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * Parameter set holding displayed keys and values, e.g. as read from a {@link SqlJournal}, which are rendered as
+     * is. Its operations carry the displayed key and value as arguments but no method, so they can't be applied to a
+     * statement.
+     */
+    static final class DisplayedParameters extends AbstractList<ParameterSetOperation> {
+        private final SortedMap<String, String> parameters = logCreator.newParameterMap();
+        private final List<ParameterSetOperation> operations;
+
+        DisplayedParameters(int size) {
+            this.operations = new ArrayList<>(size);
+        }
+
+        void add(String key, String value) {
+            parameters.put(key, value);
+            operations.add(new ParameterSetOperation(null, new Object[]{key, value}));
+        }
+
+        @Override
+        public ParameterSetOperation get(int index) {
+            return operations.get(index);
+        }
+
+        @Override
+        public int size() {
+            return operations.size();
+        }
+    }
+
+    /**
+     * Words and referenced tables of a query text, cached since applications execute few distinct queries.
+     */
+    private static final class QueryIndex {
+        private static final Pattern TABLE = Pattern.compile("\\b(?:from|join|into|update|table)\\s+([\\w.$\"]+)");
+
+        private final Set<String> words;
+        private final Set<String> tables;
+
+        private QueryIndex(String sql) {
+            Set<String> words = new HashSet<>();
+            SqlLogIndex.addWords(logCreator.escape(sql), words);
+            this.words = Collections.unmodifiableSet(words);
+            Set<String> tables = new LinkedHashSet<>();
+            Matcher matcher = TABLE.matcher(SqlFingerprint.of(sql));
+            while (matcher.find())
+                tables.add(matcher.group(1).replace("\"", ""));
+            this.tables = Collections.unmodifiableSet(tables);
+        }
+    }
+
+    private static final class JsonLogEntryCreator extends DefaultJsonQueryLogEntryCreator {
+        @Override
+        protected void writeTimeEntry(StringBuilder sb, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        protected SortedMap<String, String> getParametersToDisplay(List<ParameterSetOperation> params) {
+            return params instanceof DisplayedParameters ? ((DisplayedParameters) params).parameters
+                    : super.getParametersToDisplay(params);
+        }
+
+        /**
+         * @return an empty map ordering parameter keys like {@link #getParametersToDisplay(List)}
+         */
+        SortedMap<String, String> newParameterMap() {
+            return new TreeMap<>(new StringAsIntegerComparator() {
+            });
+        }
+
+        String escape(String s) {
+            return s == null ? "null" : escapeSpecialCharacter(s);
+        }
+    }
+}
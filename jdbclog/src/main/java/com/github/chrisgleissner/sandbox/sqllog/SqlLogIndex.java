@@ -0,0 +1,293 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.StatementType;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Index of the entries of a {@link SqlLog.ConnectionLog} by their sequence. Entries are indexed by statement type, by
+ * the tables their queries reference and by the words of their JSON, where a word is a run of letters, digits and
+ * underscores. The index is updated as entries are added and pruned as they are overwritten, so that a search only
+ * matches the JSON of the entries containing all words of the search string. Not thread-safe; the log synchronizes on
+ * it.
+ */
+final class SqlLogIndex {
+    /**
+     * Words of the JSON which aren't indexed since most entries contain them. A search word which may be part of one of
+     * them doesn't narrow down the candidates.
+     */
+    private static final Set<String> UNINDEXED_WORDS = new HashSet<>(asList("success", "true", "false", "type",
+            "Statement", "Prepared", "Callable", "batch", "querySize", "batchSize", "query", "params", "null", "plan"));
+
+    private final int capacity;
+    private final Postings[][] postingsBySlot;
+    private final Map<StatementType, Postings> postingsByType = new EnumMap<>(StatementType.class);
+    private final Map<String, Postings> postingsByTable = new HashMap<>();
+    private final Map<String, Postings> postingsByWord = new HashMap<>();
+    /**
+     * Entries to which a plan may be attached. Plans aren't indexed, so these entries are candidates of every search.
+     */
+    private final Postings explainable = new Postings(null, null);
+    private long nextSequence;
+
+    SqlLogIndex(int capacity) {
+        this.capacity = capacity;
+        this.postingsBySlot = new Postings[capacity][];
+    }
+
+    /**
+     * Indexes the entry with the next sequence and prunes the entry it overwrites, if any. Entries must be added in
+     * the order of their sequences in the log.
+     *
+     * @param explainable whether a plan may be attached to the entry
+     * @return the change of the number of sequences held by the index
+     */
+    int add(SqlLogEntry entry, boolean explainable) {
+        long sequence = nextSequence++;
+        int slot = (int) (sequence % capacity);
+        int removedCount = 0;
+        if (postingsBySlot[slot] != null) {
+            for (Postings postings : postingsBySlot[slot])
+                postings.removeOldest(sequence - capacity);
+            removedCount = postingsBySlot[slot].length;
+        }
+        List<Postings> postings = new ArrayList<>();
+        if (entry.getType() != null)
+            postings.add(postings(postingsByType, entry.getType()));
+        for (String table : entry.getTables())
+            postings.add(postings(postingsByTable, table));
+        for (String word : entry.getWords())
+            postings.add(postings(postingsByWord, word));
+        if (explainable)
+            postings.add(this.explainable);
+        for (Postings p : postings)
+            p.add(sequence);
+        postingsBySlot[slot] = postings.toArray(new Postings[0]);
+        return postings.size() - removedCount;
+    }
+
+    private static <K> Postings postings(Map<K, Postings> postingsByKey, K key) {
+        return postingsByKey.computeIfAbsent(key, k -> new Postings(postingsByKey, k));
+    }
+
+    /**
+     * @return the ascending sequences of the entries of the statement type
+     */
+    long[] findType(StatementType type) {
+        return toSequences(postingsByType.get(type));
+    }
+
+    /**
+     * @return the ascending sequences of the entries whose queries reference the table
+     */
+    long[] findTable(String table) {
+        return toSequences(postingsByTable.get(table));
+    }
+
+    private long[] toSequences(Postings postings) {
+        if (postings == null)
+            return new long[0];
+        BitSet bits = new BitSet();
+        long oldestSequence = getOldestSequence();
+        postings.addTo(bits, oldestSequence);
+        return bits.stream().mapToLong(i -> oldestSequence + i).toArray();
+    }
+
+    /**
+     * @return the ascending sequences of the entries which may match the query, i.e. which contain a word of which
+     * each search word may be part, or to which a plan may be attached
+     */
+    long[] find(Query query) {
+        long oldestSequence = getOldestSequence();
+        int size = (int) (nextSequence - oldestSequence);
+        BitSet candidates = null;
+        for (Term term : query.terms) {
+            if (term.matchesAny(UNINDEXED_WORDS))
+                continue;
+            BitSet matches = new BitSet(size);
+            if (term.exact) {
+                Postings postings = postingsByWord.get(term.word);
+                if (postings != null)
+                    postings.addTo(matches, oldestSequence);
+            } else {
+                for (Map.Entry<String, Postings> postings : postingsByWord.entrySet()) {
+                    if (term.matches(postings.getKey()))
+                        postings.getValue().addTo(matches, oldestSequence);
+                }
+            }
+            if (candidates == null)
+                candidates = matches;
+            else
+                candidates.and(matches);
+        }
+        if (candidates == null) {
+            candidates = new BitSet(size);
+            candidates.set(0, size);
+        } else
+            explainable.addTo(candidates, oldestSequence);
+        return candidates.stream().mapToLong(i -> oldestSequence + i).toArray();
+    }
+
+    private long getOldestSequence() {
+        return Math.max(0, nextSequence - capacity);
+    }
+
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Adds the words of the text to the collection.
+     */
+    static void addWords(String text, Collection<String> words) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length() && isWordChar(text.charAt(i))) {
+                if (start < 0)
+                    start = i;
+            } else if (start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Words which the JSON of an entry must contain parts of to match a search.
+     */
+    static final class Query {
+        private final List<Term> terms;
+
+        private Query(List<Term> terms) {
+            this.terms = terms;
+        }
+
+        /**
+         * @return a query for the JSON containing the string; a word of the string which isn't at its start or end
+         * must be a word of the JSON, otherwise it must be its end or start, respectively, or any part of it
+         */
+        static Query of(String string) {
+            List<Term> terms = new ArrayList<>();
+            int start = -1;
+            for (int i = 0; i <= string.length(); i++) {
+                if (i < string.length() && isWordChar(string.charAt(i))) {
+                    if (start < 0)
+                        start = i;
+                } else if (start >= 0) {
+                    terms.add(new Term(string.substring(start, i), start > 0, i < string.length()));
+                    start = -1;
+                }
+            }
+            return new Query(terms);
+        }
+
+        /**
+         * @return a query for the JSON containing a match of the regex, of which each word must be part of a word of
+         * the JSON; it matches all entries unless the regex consists only of words, {@code .} and quantifiers
+         */
+        static Query ofRegex(String regex) {
+            List<Term> terms = new ArrayList<>();
+            for (int i = 0; i < regex.length(); i++) {
+                if ("|([{\\^$".indexOf(regex.charAt(i)) >= 0)
+                    return new Query(terms);
+            }
+            int start = 0;
+            for (int i = 0; i <= regex.length(); i++) {
+                if (i == regex.length() || !isWordChar(regex.charAt(i))) {
+                    int end = i < regex.length() && "?*".indexOf(regex.charAt(i)) >= 0 ? i - 1 : i;
+                    if (end > start)
+                        terms.add(new Term(regex.substring(start, end), false, false));
+                    start = i + 1;
+                }
+            }
+            return new Query(terms);
+        }
+    }
+
+    /**
+     * Search word together with whether it is preceded and followed by a non-word character in the search string, in
+     * which case it must be the start or end of a word of the JSON.
+     */
+    private static final class Term {
+        private final String word;
+        private final boolean start;
+        private final boolean end;
+        private final boolean exact;
+
+        private Term(String word, boolean start, boolean end) {
+            this.word = word;
+            this.start = start;
+            this.end = end;
+            this.exact = start && end;
+        }
+
+        boolean matches(String jsonWord) {
+            if (start)
+                return end ? jsonWord.equals(word) : jsonWord.startsWith(word);
+            return end ? jsonWord.endsWith(word) : jsonWord.contains(word);
+        }
+
+        boolean matchesAny(Collection<String> jsonWords) {
+            for (String jsonWord : jsonWords) {
+                if (matches(jsonWord))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Ascending sequences of the entries with a key. Sequences are added in ascending order and removed oldest first,
+     * and the postings remove themselves from their map once empty.
+     */
+    private static final class Postings {
+        private final Map<?, Postings> postingsByKey;
+        private final Object key;
+        private long[] sequences = new long[4];
+        private int head;
+        private int size;
+
+        private Postings(Map<?, Postings> postingsByKey, Object key) {
+            this.postingsByKey = postingsByKey;
+            this.key = key;
+        }
+
+        void add(long sequence) {
+            if (head + size == sequences.length) {
+                long[] newSequences = size < sequences.length / 2 ? sequences : new long[sequences.length * 2];
+                System.arraycopy(sequences, head, newSequences, 0, size);
+                sequences = newSequences;
+                head = 0;
+            }
+            sequences[head + size++] = sequence;
+        }
+
+        void removeOldest(long sequence) {
+            if (size == 0 || sequences[head] != sequence)
+                return;
+            head++;
+            if (--size == 0) {
+                head = 0;
+                if (postingsByKey != null)
+                    postingsByKey.remove(key, this);
+            }
+        }
+
+        void addTo(BitSet bits, long oldestSequence) {
+            for (int i = head; i < head + size; i++) {
+                if (sequences[i] >= oldestSequence)
+                    bits.set((int) (sequences[i] - oldestSequence));
+            }
+        }
+    }
+}
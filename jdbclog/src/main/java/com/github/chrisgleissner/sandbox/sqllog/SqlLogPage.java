@@ -0,0 +1,27 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Consecutive entries of one thread id, read by {@link SqlLog#getPageForThreadId(String, long, int)}. Each thread id
+ * numbers its entries from 0; reading again from {@link #getNextSequence()} returns the entries added since, so a
+ * consumer can tail a thread id without reading any entry twice.
+ */
+@Getter
+@RequiredArgsConstructor
+@ToString
+public class SqlLogPage {
+    private final List<SqlLogEntry> entries;
+    /**
+     * Sequence from which to read the next page.
+     */
+    private final long nextSequence;
+    /**
+     * Number of entries from the requested sequence on which were no longer retained, since they were overwritten.
+     */
+    private final long missedCount;
+}
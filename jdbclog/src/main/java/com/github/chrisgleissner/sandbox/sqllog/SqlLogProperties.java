@@ -0,0 +1,86 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the auto-configured {@link SqlLog}, which is enabled by setting
+ * {@code com.github.chrisgleissner.sandbox.sqllog=true}. Settings without a value default to those of the
+ * {@link #profile}.
+ */
+@Data
+@ConfigurationProperties(prefix = SqlLogProperties.PREFIX)
+public class SqlLogProperties {
+    public static final String PREFIX = "com.github.chrisgleissner.sandbox.sqllog";
+
+    private SqlLog.Profile profile = SqlLog.Profile.DEVELOPMENT;
+    /**
+     * Whether all JDBC method calls are intercepted, rather than only statement executions.
+     */
+    private Boolean traceMethods;
+    /**
+     * Names of the data source beans to proxy; empty to proxy all data sources.
+     */
+    private List<String> dataSourceNames = new ArrayList<>();
+    /**
+     * Maximum number of statements retained per thread id; defaults to {@link SqlLog#DEFAULT_CAPACITY}, or to
+     * {@link SqlLog#DEFAULT_JOURNALED_CAPACITY} if a journal is used.
+     */
+    private Integer capacity;
+    private long maxBytes = SqlLog.DEFAULT_MAX_BYTES;
+    private long idleTtlMillis = SqlLog.DEFAULT_IDLE_TTL_MILLIS;
+    private final Sink sink = new Sink();
+    private final Statistics statistics = new Statistics();
+    private final Journal journal = new Journal();
+    private final Sampling sampling = new Sampling();
+    private final Explain explain = new Explain();
+
+    @Data
+    public static class Sink {
+        /**
+         * Whether entries are logged via SLF4J.
+         */
+        private Boolean logging;
+        private int queueCapacity = AsyncSqlLogSink.DEFAULT_QUEUE_CAPACITY;
+        private AsyncSqlLogSink.FullQueuePolicy fullQueuePolicy = AsyncSqlLogSink.FullQueuePolicy.DISCARD;
+    }
+
+    @Data
+    public static class Statistics {
+        private boolean enabled;
+        private int maxFingerprints = SqlStatistics.DEFAULT_MAX_FINGERPRINTS;
+    }
+
+    @Data
+    public static class Journal {
+        /**
+         * Directory of the journal segments; no journal is written if not set.
+         */
+        private Path directory;
+        private int segmentSize = SqlJournal.DEFAULT_SEGMENT_SIZE;
+        private int maxSegments = SqlJournal.DEFAULT_MAX_SEGMENTS;
+    }
+
+    @Data
+    public static class Sampling {
+        /**
+         * Budget of sampled entries per second; 0 to capture all statements.
+         */
+        private int maxEntriesPerSecond;
+        private long slowThresholdMillis = SqlSampler.DEFAULT_SLOW_THRESHOLD_MILLIS;
+        private int firstOccurrences = SqlSampler.DEFAULT_FIRST_OCCURRENCES;
+        private int maxFingerprints = SqlSampler.DEFAULT_MAX_FINGERPRINTS;
+    }
+
+    @Data
+    public static class Explain {
+        private boolean enabled;
+        private long thresholdMillis = SqlExplainer.DEFAULT_THRESHOLD_MILLIS;
+        private int maxPerSecond = SqlExplainer.DEFAULT_MAX_EXPLAINS_PER_SECOND;
+        private int maxFingerprints = SqlExplainer.DEFAULT_MAX_FINGERPRINTS;
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which statements {@link SqlLog} captures, so that capture stays within a budget of entries per second.
+ * Failed and slow statements as well as the first occurrences of each {@link SqlFingerprint} are always captured, but
+ * count against the budget. Beyond that, each fingerprint gets an equal share of the remaining budget: once per
+ * second, the sampler sets the interval at which each fingerprint is captured from its rate of executions, so hot,
+ * repetitive fingerprints are sampled down while rare ones are still captured in full. The rate of a fingerprint is
+ * the number of its executions in the past second, but at least half its previous rate, so a quiet second doesn't
+ * lift its sampling. Sampled statements are skipped once the budget of the current second is used up.
+ * <p>
+ * The number of executions and skipped executions are counted per fingerprint. {@link SqlStatistics} aren't sampled
+ * and thus remain exact.
+ */
+public class SqlSampler {
+    public static final int DEFAULT_FIRST_OCCURRENCES = 10;
+    public static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 100;
+    public static final int DEFAULT_MAX_FINGERPRINTS = 10_000;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxEntriesPerSecond;
+    private final long slowThresholdMillis;
+    private final int firstOccurrences;
+    private final int maxFingerprints;
+    private final ConcurrentHashMap<String, FingerprintSampler> samplersByFingerprint = new ConcurrentHashMap<>();
+    private final AtomicLong windowStartNanos = new AtomicLong(System.nanoTime());
+    /**
+     * Number of statements captured in the current window, including those always captured.
+     */
+    private final AtomicInteger windowCapturedCount = new AtomicInteger();
+    private final AtomicInteger windowAlwaysCapturedCount = new AtomicInteger();
+
+    public SqlSampler(int maxEntriesPerSecond) {
+        this(maxEntriesPerSecond, DEFAULT_SLOW_THRESHOLD_MILLIS, DEFAULT_FIRST_OCCURRENCES, DEFAULT_MAX_FINGERPRINTS);
+    }
+
+    /**
+     * @param maxEntriesPerSecond budget of captured entries per second, including those which are always captured
+     * @param slowThresholdMillis elapsed time from which a statement is always captured
+     * @param firstOccurrences    number of executions of each fingerprint which are always captured
+     * @param maxFingerprints     maximum number of fingerprints sampled separately; further fingerprints share the
+     *                            budget of {@link SqlStatistics#OTHER_FINGERPRINT}
+     */
+    public SqlSampler(int maxEntriesPerSecond, long slowThresholdMillis, int firstOccurrences, int maxFingerprints) {
+        if (maxEntriesPerSecond < 1)
+            throw new IllegalArgumentException("Max entries per second must be positive, but was " + maxEntriesPerSecond);
+        this.maxEntriesPerSecond = maxEntriesPerSecond;
+        this.slowThresholdMillis = slowThresholdMillis;
+        this.firstOccurrences = firstOccurrences;
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    /**
+     * @return whether the execution is to be captured
+     */
+    public boolean sample(ExecutionInfo executionInfo, List<QueryInfo> queryInfos) {
+        long startNanos = windowStartNanos.get();
+        if (System.nanoTime() - startNanos >= WINDOW_NANOS && windowStartNanos.compareAndSet(startNanos, System.nanoTime()))
+            adapt();
+        FingerprintSampler sampler = getOrCreate(SqlFingerprint.of(queryInfos));
+        return sampler.sample(!executionInfo.isSuccess() || executionInfo.getElapsedTime() >= slowThresholdMillis);
+    }
+
+    /**
+     * Sets the sampling interval of each fingerprint from its rate of executions and starts a new window.
+     */
+    synchronized void adapt() {
+        int activeFingerprints = 0;
+        for (FingerprintSampler sampler : samplersByFingerprint.values()) {
+            sampler.rate = Math.max(sampler.currentWindowCount.getAndSet(0), sampler.rate / 2);
+            if (sampler.rate > 0)
+                activeFingerprints++;
+        }
+        int budget = Math.max(1, maxEntriesPerSecond - windowAlwaysCapturedCount.getAndSet(0));
+        int share = Math.max(1, budget / Math.max(1, activeFingerprints));
+        for (FingerprintSampler sampler : samplersByFingerprint.values())
+            sampler.interval = (sampler.rate + share - 1) / share;
+        windowCapturedCount.set(0);
+    }
+
+    private FingerprintSampler getOrCreate(String fingerprint) {
+        FingerprintSampler sampler = samplersByFingerprint.get(fingerprint);
+        if (sampler != null)
+            return sampler;
+        if (samplersByFingerprint.size() >= maxFingerprints)
+            fingerprint = SqlStatistics.OTHER_FINGERPRINT;
+        return samplersByFingerprint.computeIfAbsent(fingerprint, fp -> new FingerprintSampler());
+    }
+
+    /**
+     * @return the number of executions of the fingerprint seen by this sampler
+     */
+    public long getCount(String fingerprint) {
+        FingerprintSampler sampler = samplersByFingerprint.get(fingerprint);
+        return sampler == null ? 0 : sampler.count.get();
+    }
+
+    /**
+     * @return the number of executions of the fingerprint which weren't captured
+     */
+    public long getSkippedCount(String fingerprint) {
+        FingerprintSampler sampler = samplersByFingerprint.get(fingerprint);
+        return sampler == null ? 0 : sampler.skippedCount.sum();
+    }
+
+    /**
+     * @return the number of executions of all fingerprints which weren't captured
+     */
+    public long getSkippedCount() {
+        return samplersByFingerprint.values().stream().mapToLong(s -> s.skippedCount.sum()).sum();
+    }
+
+    private class FingerprintSampler {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicInteger currentWindowCount = new AtomicInteger();
+        private final LongAdder skippedCount = new LongAdder();
+        /**
+         * Executions per second assumed when setting the interval.
+         */
+        private int rate;
+        /**
+         * Every interval-th execution is captured; 0 or 1 captures all.
+         */
+        private volatile int interval;
+
+        boolean sample(boolean always) {
+            long count = this.count.incrementAndGet();
+            int windowCount = currentWindowCount.incrementAndGet();
+            int interval = this.interval;
+            if (always || count <= firstOccurrences) {
+                windowCapturedCount.incrementAndGet();
+                windowAlwaysCapturedCount.incrementAndGet();
+                return true;
+            }
+            if ((interval <= 1 || windowCount % interval == 0) && windowCapturedCount.incrementAndGet() <= maxEntriesPerSecond)
+                return true;
+            skippedCount.increment();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.NoOpQueryExecutionListener;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Aggregates executions by {@link SqlFingerprint}, measuring their latency with nanosecond precision. The number of
+ * distinct fingerprints is bounded; once the limit is reached, further statements are aggregated under
+ * {@link #OTHER_FINGERPRINT}.
+ */
+public class SqlStatistics extends NoOpQueryExecutionListener {
+    public static final String OTHER_FINGERPRINT = "<other>";
+    public static final int DEFAULT_MAX_FINGERPRINTS = 10_000;
+    private static final ThreadLocal<long[]> startNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final int maxFingerprints;
+    private final ConcurrentHashMap<String, StatementStats> statsByFingerprint = new ConcurrentHashMap<>();
+
+    public SqlStatistics() {
+        this(DEFAULT_MAX_FINGERPRINTS);
+    }
+
+    public SqlStatistics(int maxFingerprints) {
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo executionInfo, List<QueryInfo> queryInfos) {
+        startNanos.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo executionInfo, List<QueryInfo> queryInfos) {
+        long elapsedNanos = System.nanoTime() - startNanos.get()[0];
+        if (queryInfos.isEmpty())
+            return;
+        getOrCreate(SqlFingerprint.of(queryInfos)).record(elapsedNanos, executionInfo.isSuccess(), rowCount(executionInfo.getResult()),
+                executionInfo.isBatch() ? executionInfo.getBatchSize() : 0);
+    }
+
+    private StatementStats getOrCreate(String fingerprint) {
+        StatementStats stats = statsByFingerprint.get(fingerprint);
+        if (stats != null)
+            return stats;
+        if (statsByFingerprint.size() >= maxFingerprints)
+            fingerprint = OTHER_FINGERPRINT;
+        return statsByFingerprint.computeIfAbsent(fingerprint, StatementStats::new);
+    }
+
+    private static int rowCount(Object result) {
+        if (result instanceof Integer)
+            return Math.max(0, (Integer) result);
+        if (result instanceof int[]) {
+            int rowCount = 0;
+            for (int updateCount : (int[]) result)
+                rowCount += Math.max(0, updateCount);
+            return rowCount;
+        }
+        return 0;
+    }
+
+    public Optional<StatementStats> getStats(String fingerprint) {
+        return Optional.ofNullable(statsByFingerprint.get(fingerprint));
+    }
+
+    public Collection<StatementStats> getAllStats() {
+        return statsByFingerprint.values();
+    }
+
+    /**
+     * @return the statistics of the n fingerprints with the highest total execution time, highest first
+     */
+    public List<StatementStats> getTopByTotalTime(int n) {
+        return statsByFingerprint.values().stream()
+                .map(stats -> new SimpleEntry<>(stats.getTotalTimeNanos(), stats))
+                .sorted(comparingLong(Map.Entry<Long, StatementStats>::getKey).reversed())
+                .limit(n)
+                .map(Map.Entry::getValue)
+                .collect(toList());
+    }
+
+    public void clear() {
+        statsByFingerprint.clear();
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution statistics of all statements with the same {@link SqlFingerprint}.
+ */
+@RequiredArgsConstructor
+public class StatementStats {
+    @Getter
+    private final String fingerprint;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder totalTimeNanos = new LongAdder();
+    private final LongAdder rowCount = new LongAdder();
+    private final LongAdder batchSize = new LongAdder();
+    @Getter
+    private final LatencyHistogram latencyNanos = new LatencyHistogram();
+
+    void record(long elapsedNanos, boolean success, int rowCount, int batchSize) {
+        count.increment();
+        if (!success)
+            errorCount.increment();
+        totalTimeNanos.add(elapsedNanos);
+        this.rowCount.add(rowCount);
+        this.batchSize.add(batchSize);
+        latencyNanos.record(elapsedNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    public long getTotalTimeNanos() {
+        return totalTimeNanos.sum();
+    }
+
+    /**
+     * @return the sum of the update counts reported by all executions; queries don't report any
+     */
+    public long getRowCount() {
+        return rowCount.sum();
+    }
+
+    /**
+     * @return the sum of the batch sizes of all batch executions
+     */
+    public long getBatchSize() {
+        return batchSize.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StatementStats(fingerprint=%s, count=%d, errorCount=%d, totalTimeNanos=%d, " +
+                        "p50Nanos=%d, p99Nanos=%d, maxNanos=%d, rowCount=%d, batchSize=%d)", fingerprint, getCount(),
+                getErrorCount(), getTotalTimeNanos(), latencyNanos.getPercentile(50), latencyNanos.getPercentile(99),
+                latencyNanos.getMax(), getRowCount(), getBatchSize());
+    }
+}
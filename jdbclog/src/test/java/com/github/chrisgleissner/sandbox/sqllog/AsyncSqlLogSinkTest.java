@@ -0,0 +1,44 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncSqlLogSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesEntriesOfferedWhileIdleBeforeClosingJournal() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        AsyncSqlLogSink sink = new AsyncSqlLogSink(16, AsyncSqlLogSink.FullQueuePolicy.BLOCK,
+                new SqlJournal(directory), false);
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 == 0)
+                Thread.sleep(5);
+            sink.accept(entry("select " + i));
+        }
+        sink.close();
+        sink.accept(entry("select after close"));
+
+        try (SqlJournal journal = new SqlJournal(directory)) {
+            assertThat(journal.readForThreadId("a")).hasSize(100);
+        }
+    }
+
+    private static SqlLogEntry entry(String sql) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setStatementType(StatementType.STATEMENT);
+        executionInfo.setSuccess(true);
+        return SqlLogEntry.of("a", System.currentTimeMillis(), executionInfo, singletonList(new QueryInfo(sql)));
+    }
+}
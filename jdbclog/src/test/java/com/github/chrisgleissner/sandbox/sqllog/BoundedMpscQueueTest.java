@@ -0,0 +1,55 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedMpscQueueTest {
+
+    @Test
+    public void rejectsElementsWhenFull() {
+        BoundedMpscQueue<String> queue = new BoundedMpscQueue<>(3);
+        assertThat(queue.getCapacity()).isEqualTo(4);
+        for (String s : new String[]{"a", "b", "c", "d"})
+            assertThat(queue.offer(s)).isTrue();
+        assertThat(queue.offer("e")).isFalse();
+
+        List<String> drained = new ArrayList<>();
+        assertThat(queue.drain(drained::add, 2)).isEqualTo(2);
+        assertThat(queue.offer("e")).isTrue();
+        assertThat(queue.drain(drained::add, 10)).isEqualTo(3);
+        assertThat(drained).containsExactly("a", "b", "c", "d", "e");
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void preservesOrderPerProducer() throws InterruptedException {
+        BoundedMpscQueue<int[]> queue = new BoundedMpscQueue<>(64);
+        int producerCount = 4;
+        int elementsPerProducer = 10_000;
+        CountDownLatch endLatch = new CountDownLatch(producerCount);
+        for (int p = 0; p < producerCount; p++) {
+            int producer = p;
+            new Thread(() -> {
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    while (!queue.offer(new int[]{producer, i}))
+                        Thread.yield();
+                }
+                endLatch.countDown();
+            }).start();
+        }
+
+        int[] nextElements = new int[producerCount];
+        int count = 0;
+        while (count < producerCount * elementsPerProducer) {
+            count += queue.drain(e -> assertThat(e[1]).isEqualTo(nextElements[e[0]]++), 16);
+        }
+        assertThat(endLatch.await(10, SECONDS)).isTrue();
+        assertThat(queue.isEmpty()).isTrue();
+    }
+}
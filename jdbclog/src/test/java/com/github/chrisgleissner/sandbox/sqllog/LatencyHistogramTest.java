@@ -0,0 +1,31 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValuesContiguously() {
+        int maxIndex = LatencyHistogram.index(Long.MAX_VALUE);
+        for (int i = 0; i < maxIndex; i++) {
+            assertThat(LatencyHistogram.index(LatencyHistogram.upperBound(i))).isEqualTo(i);
+            assertThat(LatencyHistogram.index(LatencyHistogram.upperBound(i) + 1)).isEqualTo(i + 1);
+        }
+        assertThat(LatencyHistogram.upperBound(maxIndex)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void reportsPercentilesWithBoundedRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000);
+        assertThat((double) histogram.getPercentile(50)).isCloseTo(500_000, within(500_000 / 16.0));
+        assertThat((double) histogram.getPercentile(99)).isCloseTo(990_000, within(990_000 / 16.0));
+        assertThat(histogram.getPercentile(100)).isEqualTo(1_000_000);
+    }
+}
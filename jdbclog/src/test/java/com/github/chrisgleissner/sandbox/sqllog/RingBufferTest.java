@@ -0,0 +1,69 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RingBufferTest {
+
+    @Test
+    public void retainsEntriesUpToCapacity() {
+        RingBuffer<String> buffer = new RingBuffer<>(3);
+        assertThat(buffer.getAll()).isEmpty();
+        buffer.add("a");
+        buffer.add("b");
+        assertThat(buffer.getAll()).containsExactly("a", "b");
+        assertThat(buffer.getDroppedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void overwritesOldestEntries() {
+        RingBuffer<String> buffer = new RingBuffer<>(3);
+        for (String s : new String[]{"a", "b", "c"})
+            assertThat(buffer.add(s)).isNull();
+        assertThat(buffer.add("d")).isEqualTo("a");
+        assertThat(buffer.add("e")).isEqualTo("b");
+        assertThat(buffer.getAll()).containsExactly("c", "d", "e");
+        assertThat(buffer.getDroppedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void readsPagesFromSequence() {
+        RingBuffer<String> buffer = new RingBuffer<>(3);
+        List<String> page = new ArrayList<>();
+        assertThat(buffer.read(0, 2, page::add)).isEqualTo(0);
+        for (String s : new String[]{"a", "b", "c", "d"})
+            buffer.add(s);
+        assertThat(buffer.read(0, 2, page::add)).isEqualTo(3);
+        assertThat(page).containsExactly("b", "c");
+        assertThat(buffer.read(3, 2, page::add)).isEqualTo(4);
+        assertThat(page).containsExactly("b", "c", "d");
+        assertThat(buffer.read(4, 2, page::add)).isEqualTo(4);
+        assertThat(buffer.stream(2)).containsExactly("c", "d");
+        assertThat(buffer.getOldestSequence()).isEqualTo(1);
+    }
+
+    @Test
+    public void countsEveryEntryAsRetainedOrDroppedUnderConcurrentWrites() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(100);
+        int threadCount = 4;
+        int entriesPerThread = 10_000;
+        CountDownLatch endLatch = new CountDownLatch(threadCount);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < entriesPerThread; i++)
+                    buffer.add(i);
+                endLatch.countDown();
+            }));
+        }
+        threads.forEach(Thread::start);
+        assertThat(endLatch.await(10, SECONDS)).isTrue();
+        assertThat(buffer.getAll().size() + buffer.getDroppedCount()).isEqualTo(threadCount * entriesPerThread);
+    }
+}
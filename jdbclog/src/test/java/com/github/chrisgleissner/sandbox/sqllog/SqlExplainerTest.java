@@ -0,0 +1,179 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import com.zaxxer.hikari.HikariDataSource;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlExplainerTest {
+    private SqlLog sqlLog;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        sqlLog.destroy();
+    }
+
+    @Test
+    public void attachesCachedPlanToSlowStatements() throws Exception {
+        SqlExplainer explainer = new SqlExplainer(0);
+        sqlLog = sqlLog(explainer);
+        DataSource dataSource = (DataSource) sqlLog.postProcessAfterInitialization(dataSource("explain"), "primary");
+        try (SqlLogContext.Scope scope = SqlLogContext.open("explain");
+             Connection connection = dataSource.getConnection()) {
+            execute(connection, "create table item (id int primary key, name varchar(64))");
+            select(connection, 1);
+            select(connection, 2);
+        }
+
+        List<SqlLogEntry> entries = awaitPlans("explain", 2);
+        assertThat(entries).hasSize(3);
+        assertThat(entries.get(0).getPlan()).isNull();
+        assertThat(entries.get(1).getPlan()).contains("PUBLIC.ITEM").isSameAs(entries.get(2).getPlan());
+        assertThat(entries.get(1).toJson()).contains("\"plan\":\"SELECT");
+        assertThat(sqlLog.getLogsContaining("FROM PUBLIC.ITEM")).hasSize(3);
+        assertThat(explainer.getPlan("select name from item where id = ?")).contains(entries.get(1).getPlan());
+        assertThat(explainer.getSkippedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void explainsNewFingerprintsAtLimitedRate() throws Exception {
+        SqlExplainer explainer = new SqlExplainer(0, 1, 100);
+        sqlLog = sqlLog(explainer);
+        DataSource dataSource = (DataSource) sqlLog.postProcessAfterInitialization(dataSource("rate"), "primary");
+        try (SqlLogContext.Scope scope = SqlLogContext.open("rate");
+             Connection connection = dataSource.getConnection()) {
+            execute(connection, "create table item (id int primary key, name varchar(64))");
+            select(connection, 1);
+            execute(connection, "select count(*) from item");
+        }
+
+        assertThat(awaitPlans("rate", 1).stream().map(SqlLogEntry::getPlan).filter(plan -> plan != null)).hasSize(1);
+        assertThat(explainer.getSkippedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void doesNotExplainStatementsBelowThreshold() throws Exception {
+        sqlLog = sqlLog(new SqlExplainer(60_000));
+        DataSource dataSource = (DataSource) sqlLog.postProcessAfterInitialization(dataSource("threshold"), "primary");
+        try (SqlLogContext.Scope scope = SqlLogContext.open("threshold");
+             Connection connection = dataSource.getConnection()) {
+            execute(connection, "create table item (id int primary key, name varchar(64))");
+            select(connection, 1);
+        }
+
+        Thread.sleep(100);
+        assertThat(sqlLog.streamEntriesForThreadId("threshold").map(SqlLogEntry::getPlan)).containsOnlyNulls();
+        assertThat(sqlLog.getExplainer().get().getSkippedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void retriesFailedPlansOnceExpired() throws Exception {
+        DataSource dataSource = dataSource("retry");
+        SqlExplainer explainer = new SqlExplainer(0, 100, 100, 0);
+        SqlExplainer cachingExplainer = new SqlExplainer(0, 100, 100, 60_000);
+        sqlLog = sqlLog(explainer);
+        explainer.addDataSource("primary", dataSource);
+        cachingExplainer.addDataSource("primary", dataSource);
+        try {
+            assertThat(awaitPlan(explainer, explain(explainer))).isNull();
+            assertThat(awaitPlan(cachingExplainer, explain(cachingExplainer))).isNull();
+            try (Connection connection = dataSource.getConnection()) {
+                execute(connection, "create table item (id int primary key, name varchar(64))");
+            }
+            assertThat(awaitPlan(explainer, explain(explainer))).contains("PUBLIC.ITEM");
+            assertThat(awaitPlan(cachingExplainer, explain(cachingExplainer))).isNull();
+        } finally {
+            cachingExplainer.close();
+        }
+    }
+
+    @Test
+    public void skipsExplainWithoutIdleConnection() throws Exception {
+        SqlExplainer explainer = new SqlExplainer(0);
+        sqlLog = sqlLog(explainer);
+        try (HikariDataSource dataSource = new HikariDataSource()) {
+            dataSource.setJdbcUrl("jdbc:h2:mem:idle;DB_CLOSE_DELAY=-1");
+            dataSource.setMaximumPoolSize(1);
+            explainer.addDataSource("primary", dataSource);
+            try (Connection connection = dataSource.getConnection()) {
+                execute(connection, "create table item (id int primary key, name varchar(64))");
+                assertThat(awaitPlan(explainer, explain(explainer))).isNull();
+                assertThat(explainer.getSkippedCount()).isEqualTo(1);
+            }
+            assertThat(awaitPlan(explainer, explain(explainer))).contains("PUBLIC.ITEM");
+        }
+    }
+
+    /**
+     * Explains a slow select executed via the data source named primary.
+     */
+    private static SqlLogEntry explain(SqlExplainer explainer) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setDataSourceName("primary");
+        executionInfo.setSuccess(true);
+        SqlLogEntry entry = SqlLogEntry.of("a", System.currentTimeMillis(), executionInfo,
+                singletonList(new QueryInfo("select name from item")));
+        explainer.explain(executionInfo, entry);
+        return entry;
+    }
+
+    /**
+     * @return the plan of the entry, or null if the explainer didn't attach one
+     */
+    private static String awaitPlan(SqlExplainer explainer, SqlLogEntry entry) throws Exception {
+        // The explain queues the attachment of its plan
+        explainer.awaitQueued();
+        explainer.awaitQueued();
+        return entry.getPlan();
+    }
+
+    private static SqlLog sqlLog(SqlExplainer explainer) {
+        return SqlLog.builder().capacity(10)
+                .sink(new AsyncSqlLogSink(16, AsyncSqlLogSink.FullQueuePolicy.DISCARD, null, false))
+                .explainer(explainer)
+                .build();
+    }
+
+    private List<SqlLogEntry> awaitPlans(String threadId, int planCount) throws InterruptedException {
+        long deadlineMillis = System.currentTimeMillis() + 5000;
+        List<SqlLogEntry> entries;
+        do {
+            Thread.sleep(10);
+            entries = sqlLog.streamEntriesForThreadId(threadId).collect(toList());
+        } while (entries.stream().filter(e -> e.getPlan() != null).count() < planCount
+                && System.currentTimeMillis() < deadlineMillis);
+        return entries;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static void select(Connection connection, int id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select name from item where id = ?")) {
+            statement.setInt(1, id);
+            statement.executeQuery().close();
+        }
+    }
+
+    private static DataSource dataSource(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlFingerprintTest {
+
+    @Test
+    public void replacesLiterals() {
+        assertThat(SqlFingerprint.of("SELECT * FROM t WHERE id = 42 AND name = 'O''Brien' AND x > 1.5e3"))
+                .isEqualTo("select * from t where id = ? and name = ? and x > ?");
+    }
+
+    @Test
+    public void keepsIdentifiersContainingDigits() {
+        assertThat(SqlFingerprint.of("select customer0_.id as id1_0_ from customer customer0_"))
+                .isEqualTo("select customer0_.id as id1_0_ from customer customer0_");
+        assertThat(SqlFingerprint.of("select \"Col 1\" from t")).isEqualTo("select \"Col 1\" from t");
+    }
+
+    @Test
+    public void collapsesInListsWhitespaceAndComments() {
+        assertThat(SqlFingerprint.of("select *\n  from t -- all\n where id in (1, 2,3) /* ids */ or id in (?)"))
+                .isEqualTo("select * from t where id in (?+) or id in (?+)");
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsEntriesAsCaptured() throws Exception {
+        SqlLogEntry entry = entry("a", "select * from customer where last_name = ? and first_name = ?", "Bauer", null);
+        try (SqlJournal journal = new SqlJournal(folder.getRoot().toPath())) {
+            journal.append(entry);
+            List<SqlLogEntry> entries = journal.readForThreadId("a").collect(toList());
+            assertThat(entries).hasSize(1);
+            SqlLogEntry readEntry = entries.get(0);
+            assertThat(readEntry.toJson()).isEqualTo(entry.toJson())
+                    .contains("\"params\":[[\"Bauer\",null]]");
+            assertThat(readEntry.getThreadId()).isEqualTo("a");
+            assertThat(readEntry.getTimestampMillis()).isEqualTo(entry.getTimestampMillis());
+            assertThat(readEntry.getType()).isEqualTo(StatementType.PREPARED);
+        }
+    }
+
+    @Test
+    public void readsByThreadIdAndTimeRange() throws Exception {
+        try (SqlJournal journal = new SqlJournal(folder.getRoot().toPath())) {
+            journal.append(entry("a", "select 1"));
+            journal.append(entry("b", "select 2"));
+            journal.append(entry("a", "select 3"));
+            assertThat(queries(journal.readForThreadId("a"))).containsExactly("select 1", "select 3");
+            assertThat(queries(journal.read(Long.MIN_VALUE, Long.MAX_VALUE))).containsExactly("select 1", "select 2", "select 3");
+            assertThat(queries(journal.read(0, 1))).isEmpty();
+            assertThat(queries(journal.read(System.currentTimeMillis() + 1, Long.MAX_VALUE))).isEmpty();
+        }
+    }
+
+    @Test
+    public void readsEntriesAppendedOutOfOrder() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (SqlJournal journal = new SqlJournal(directory)) {
+            journal.append(entry("a", 200, "select 1"));
+            journal.append(entry("a", 100, "select 2"));
+            journal.append(entry("a", 300, "select 3"));
+            assertThat(queries(journal.read(100, 101))).containsExactly("select 2");
+            assertThat(queries(journal.read(250, 400))).containsExactly("select 3");
+        }
+
+        try (SqlJournal journal = new SqlJournal(directory)) {
+            assertThat(queries(journal.read(100, 101))).containsExactly("select 2");
+        }
+    }
+
+    @Test
+    public void rollsAndDeletesSegments() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (SqlJournal journal = new SqlJournal(directory, 256, 3)) {
+            for (int i = 0; i < 20; i++)
+                journal.append(entry("a", "select " + i + " from dual"));
+            journal.append(entry("a", new String(new char[256])));
+            assertThat(journal.getOversizedCount()).isEqualTo(1);
+            assertThat(Files.list(directory).count()).isEqualTo(3);
+            List<String> queries = queries(journal.readForThreadId("a"));
+            assertThat(queries.size()).isBetween(1, 19);
+            assertThat(queries).endsWith("select 19 from dual");
+        }
+
+        try (SqlJournal journal = new SqlJournal(directory, 256, 3)) {
+            assertThat(queries(journal.readForThreadId("a"))).endsWith("select 19 from dual");
+            journal.append(entry("a", "select 20 from dual"));
+            assertThat(queries(journal.readForThreadId("a"))).endsWith("select 19 from dual", "select 20 from dual");
+            assertThat(Files.list(directory).count()).isEqualTo(3);
+        }
+    }
+
+    private static List<String> queries(Stream<SqlLogEntry> entries) {
+        return entries.map(e -> e.getQueries().get(0).getQuery()).collect(toList());
+    }
+
+    private static SqlLogEntry entry(String threadId, long timestampMillis, String sql) {
+        return new SqlLogEntry(threadId, timestampMillis, singletonList(new QueryInfo(sql)), StatementType.STATEMENT,
+                false, 0, true, 0);
+    }
+
+    private static SqlLogEntry entry(String threadId, String sql, Object... parameters) {
+        QueryInfo queryInfo = new QueryInfo(sql);
+        List<ParameterSetOperation> parameterSet = new ArrayList<>();
+        try {
+            for (int i = 0; i < parameters.length; i++)
+                parameterSet.add(new ParameterSetOperation(PreparedStatement.class.getMethod("setObject", int.class, Object.class),
+                        new Object[]{i + 1, parameters[i]}));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        queryInfo.getParametersList().add(parameterSet);
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setStatementType(StatementType.PREPARED);
+        executionInfo.setSuccess(true);
+        return SqlLogEntry.of(threadId, System.currentTimeMillis(), executionInfo, singletonList(queryInfo));
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static com.github.chrisgleissner.sandbox.sqllog.SqlLogProperties.PREFIX;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlLogAutoConfigurationTest {
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(SqlLogAutoConfiguration.class);
+
+    @Test
+    public void isDisabledByDefault() {
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(SqlLog.class));
+    }
+
+    @Test
+    public void bindsProperties() {
+        contextRunner.withPropertyValues(PREFIX + "=true",
+                PREFIX + ".profile=production",
+                PREFIX + ".data-source-names=primary, other",
+                PREFIX + ".sink.full-queue-policy=block",
+                PREFIX + ".statistics.max-fingerprints=7",
+                PREFIX + ".sampling.max-entries-per-second=100",
+                PREFIX + ".sampling.max-fingerprints=5")
+                .run(context -> {
+                    SqlLogProperties properties = context.getBean(SqlLogProperties.class);
+                    assertThat(properties.getProfile()).isEqualTo(SqlLog.Profile.PRODUCTION);
+                    assertThat(properties.getDataSourceNames()).containsExactly("primary", "other");
+                    assertThat(properties.getSink().getFullQueuePolicy()).isEqualTo(AsyncSqlLogSink.FullQueuePolicy.BLOCK);
+                    assertThat(properties.getStatistics().getMaxFingerprints()).isEqualTo(7);
+                    assertThat(properties.getSampling().getMaxFingerprints()).isEqualTo(5);
+
+                    SqlLog sqlLog = context.getBean(SqlLog.class);
+                    assertThat(sqlLog.getStatistics()).isEmpty();
+                    assertThat(sqlLog.getSampler()).isPresent();
+                    assertThat(sqlLog.getExplainer()).isEmpty();
+                    assertThat(sqlLog.getJournal()).isEmpty();
+                });
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.chrisgleissner.sandbox.sqllog.SqlLogContext.DEFAULT_THREAD_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlLogContextTest {
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    @Test
+    public void scopesRestoreThePreviousId() {
+        assertThat(SqlLogContext.getThreadId()).isEqualTo(DEFAULT_THREAD_ID);
+        try (SqlLogContext.Scope outer = SqlLogContext.open("a")) {
+            try (SqlLogContext.Scope inner = SqlLogContext.open("b")) {
+                assertThat(SqlLogContext.getThreadId()).isEqualTo("b");
+            }
+            assertThat(SqlLogContext.getThreadId()).isEqualTo("a");
+        }
+        assertThat(SqlLogContext.getThreadId()).isEqualTo(DEFAULT_THREAD_ID);
+    }
+
+    @Test
+    public void newThreadsDontInheritTheId() throws InterruptedException {
+        AtomicReference<String> id = new AtomicReference<>();
+        try (SqlLogContext.Scope scope = SqlLogContext.open("a")) {
+            Thread thread = new Thread(() -> id.set(SqlLogContext.getThreadId()));
+            thread.start();
+            thread.join();
+        }
+        assertThat(id.get()).isEqualTo(DEFAULT_THREAD_ID);
+    }
+
+    @Test
+    public void wrappedExecutorsCarryTheIdOfEachSubmission() throws Exception {
+        Executor executor = SqlLogContext.wrap(executorService);
+        CompletableFuture<String> a;
+        CompletableFuture<String> b;
+        try (SqlLogContext.Scope scope = SqlLogContext.open("a")) {
+            a = CompletableFuture.supplyAsync(SqlLogContext::getThreadId, executor)
+                    .thenApplyAsync(id -> id + SqlLogContext.getThreadId(), executor);
+        }
+        try (SqlLogContext.Scope scope = SqlLogContext.open("b")) {
+            b = CompletableFuture.supplyAsync(SqlLogContext.wrapSupplier(SqlLogContext::getThreadId), executorService);
+        }
+        assertThat(a.get()).isEqualTo("aa");
+        assertThat(b.get()).isEqualTo("b");
+        assertThat(executorService.submit(SqlLogContext::getThreadId).get()).isEqualTo(DEFAULT_THREAD_ID);
+    }
+}
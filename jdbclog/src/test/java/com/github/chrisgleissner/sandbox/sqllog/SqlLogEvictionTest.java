@@ -0,0 +1,170 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlLogEvictionTest {
+    private final TestClock clock = new TestClock();
+    private SqlLog sqlLog;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        sqlLog.destroy();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedIdsOverByteBudget() {
+        sqlLog = SqlLog.builder().capacity(10).maxBytes(10_000).idleTtlMillis(0).build();
+        for (int i = 0; i < 100; i++)
+            execute("id" + i, "select * from customer where id = " + i);
+        assertThat(sqlLog.getEstimatedBytes()).isBetween(1L, 10_000L);
+        assertThat(sqlLog.getEvictedCount()).isGreaterThan(0);
+        assertThat(sqlLog.getLogsForThreadId("id0")).isEmpty();
+        assertThat(sqlLog.getLogsForThreadId("id99")).hasSize(1);
+    }
+
+    @Test
+    public void keepsEstimatedBytesOfOverwrittenAndRemovedEntries() {
+        sqlLog = SqlLog.builder().capacity(2).maxBytes(Long.MAX_VALUE).idleTtlMillis(0).build();
+        execute("a", "select 1");
+        long entryBytes = sqlLog.getEstimatedBytes();
+        assertThat(entryBytes).isGreaterThan(0);
+        execute("a", "select 1");
+        execute("a", "select 1");
+        assertThat(sqlLog.getEstimatedBytes()).isEqualTo(2 * entryBytes);
+        assertThat(sqlLog.getAndClearLogsForThreadId("a")).hasSize(2);
+        assertThat(sqlLog.getEstimatedBytes()).isEqualTo(0);
+        assertThat(sqlLog.getAndClearLogsForThreadId("a")).isEmpty();
+    }
+
+    @Test
+    public void doesNotRetainJsonOfEntriesLoggedBySink() throws InterruptedException {
+        sqlLog = SqlLog.builder().capacity(10).maxBytes(Long.MAX_VALUE).idleTtlMillis(0)
+                .sink(new AsyncSqlLogSink(16, AsyncSqlLogSink.FullQueuePolicy.BLOCK, null, true))
+                .build();
+        for (int i = 0; i < 10; i++)
+            execute("a", "select " + i);
+        sqlLog.destroy();
+        assertThat(sqlLog.streamEntriesForThreadId("a").map(SqlLogEntry::getJson).collect(Collectors.toList()))
+                .hasSize(10).containsOnlyNulls();
+
+        assertThat(sqlLog.getLogsForThreadId("a")).hasSize(10);
+        assertThat(sqlLog.streamEntriesForThreadId("a").map(SqlLogEntry::getJson)).doesNotContainNull();
+    }
+
+    @Test
+    public void evictsIdleIds() {
+        sqlLog = SqlLog.builder().capacity(10).maxBytes(Long.MAX_VALUE).idleTtlMillis(100).clock(clock).build();
+        execute("idle", "select 1");
+        execute("active", "select 1");
+        clock.millis += 60;
+        execute("active", "select 2");
+        assertThat(sqlLog.getEvictedCount()).isEqualTo(0);
+        clock.millis += 60;
+        execute("active", "select 3");
+        assertThat(sqlLog.getLogsForThreadId("idle")).isEmpty();
+        assertThat(sqlLog.getLogsForThreadId("active")).hasSize(3);
+        assertThat(sqlLog.getEvictedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void keepsEstimatedBytesOfConcurrentlyAddedAndEvictedIds() throws InterruptedException {
+        sqlLog = SqlLog.builder().capacity(10).maxBytes(20_000).idleTtlMillis(0).build();
+        int threadCount = 4;
+        runConcurrently(threadCount, t -> {
+            for (int i = 0; i < 5_000; i++)
+                execute("id" + t + "-" + i % 20, "select * from customer where id = " + i);
+        });
+        long retainedBytes = StreamSupport.stream(sqlLog.getConnectionLogs().spliterator(), false)
+                .mapToLong(SqlLog.ConnectionLog::getEstimatedBytes).sum();
+        assertThat(sqlLog.getEstimatedBytes()).isEqualTo(retainedBytes).isLessThanOrEqualTo(20_000);
+        assertThat(sqlLog.getEvictedCount()).isGreaterThan(0);
+    }
+
+    @Test
+    public void retainsEntriesAddedWhileIdIsRemoved() throws InterruptedException {
+        sqlLog = SqlLog.builder().capacity(100_000).maxBytes(Long.MAX_VALUE).idleTtlMillis(0).build();
+        int threadCount = 4;
+        int entriesPerThread = 5_000;
+        CountDownLatch writersDone = new CountDownLatch(1);
+        AtomicLong readCount = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            while (writersDone.getCount() > 0)
+                readCount.addAndGet(sqlLog.getAndClearLogsForThreadId("a").size());
+        });
+        reader.start();
+        runConcurrently(threadCount, t -> {
+            for (int i = 0; i < entriesPerThread; i++)
+                execute("a", "select " + i);
+        });
+        writersDone.countDown();
+        reader.join();
+        readCount.addAndGet(sqlLog.getAndClearLogsForThreadId("a").size());
+        assertThat(readCount.get()).isEqualTo(threadCount * entriesPerThread);
+        assertThat(sqlLog.getEstimatedBytes()).isEqualTo(0);
+    }
+
+    private static void runConcurrently(int threadCount, IntConsumer task) throws InterruptedException {
+        CountDownLatch endLatch = new CountDownLatch(threadCount);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                task.accept(thread);
+                endLatch.countDown();
+            }));
+        }
+        threads.forEach(Thread::start);
+        assertThat(endLatch.await(30, SECONDS)).isTrue();
+    }
+
+    private void execute(String id, String sql) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setSuccess(true);
+        try (SqlLogContext.Scope scope = SqlLogContext.open(id)) {
+            sqlLog.getConnectionLogs().afterQuery(executionInfo, singletonList(new QueryInfo(sql)));
+        }
+    }
+
+    private static class TestClock extends Clock {
+        private long millis = 1_000_000;
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlLogIndexTest {
+
+    private final SqlLogIndex index = new SqlLogIndex(10);
+
+    @Before
+    public void setUp() {
+        index.add(entry(StatementType.PREPARED, "select id from customer where last_name=?", "Bauer"), false);
+        index.add(entry(StatementType.STATEMENT, "select id from orders"), false);
+        index.add(entry(StatementType.PREPARED, "insert into customer (id) values (?)", "42"), false);
+    }
+
+    @Test
+    public void findsEntriesContainingAllWords() {
+        assertThat(index.find(SqlLogIndex.Query.of("from customer"))).containsExactly(0);
+        assertThat(index.find(SqlLogIndex.Query.of("ustom"))).containsExactly(0, 2);
+        assertThat(index.find(SqlLogIndex.Query.of("\"Bauer\""))).containsExactly(0);
+        assertThat(index.find(SqlLogIndex.Query.of("\"Baue\""))).isEmpty();
+        assertThat(index.find(SqlLogIndex.Query.of("from orders where"))).isEmpty();
+    }
+
+    @Test
+    public void findsAllEntriesForWordsOfEveryEntry() {
+        assertThat(index.find(SqlLogIndex.Query.of("\"success\":true"))).containsExactly(0, 1, 2);
+        assertThat(index.find(SqlLogIndex.Query.of("{}"))).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void findsEntriesContainingWordsOfRegex() {
+        assertThat(index.find(SqlLogIndex.Query.ofRegex("select.*?from customer"))).containsExactly(0);
+        assertThat(index.find(SqlLogIndex.Query.ofRegex("customers?"))).containsExactly(0, 2);
+        assertThat(index.find(SqlLogIndex.Query.ofRegex("orders|customer"))).containsExactly(0, 1, 2);
+        assertThat(index.find(SqlLogIndex.Query.ofRegex("(?i)SELECT"))).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void findsExplainableEntriesForAnyWords() {
+        index.add(entry(StatementType.STATEMENT, "select id from item"), true);
+        assertThat(index.find(SqlLogIndex.Query.of("FROM PUBLIC.ITEM"))).containsExactly(3);
+        assertThat(index.find(SqlLogIndex.Query.of("from customer"))).containsExactly(0, 3);
+    }
+
+    @Test
+    public void findsEntriesByTypeAndTable() {
+        assertThat(index.findType(StatementType.PREPARED)).containsExactly(0, 2);
+        assertThat(index.findType(StatementType.CALLABLE)).isEmpty();
+        assertThat(index.findTable("customer")).containsExactly(0, 2);
+        assertThat(index.findTable("orders")).containsExactly(1);
+    }
+
+    @Test
+    public void prunesOverwrittenEntries() {
+        SqlLogIndex index = new SqlLogIndex(2);
+        int addedCount = index.add(entry(StatementType.STATEMENT, "select id from orders"), false);
+        assertThat(addedCount).isGreaterThan(0);
+        index.add(entry(StatementType.STATEMENT, "select id from customer"), false);
+        assertThat(index.add(entry(StatementType.STATEMENT, "select id from customer"), false)).isEqualTo(0);
+        assertThat(index.findTable("orders")).isEmpty();
+        assertThat(index.find(SqlLogIndex.Query.of("orders"))).isEmpty();
+        assertThat(index.find(SqlLogIndex.Query.of("customer"))).containsExactly(1, 2);
+        assertThat(index.add(entry(StatementType.STATEMENT, "select 1"), false)).isLessThan(0);
+        assertThat(index.find(SqlLogIndex.Query.of("customer"))).containsExactly(2);
+    }
+
+    private static SqlLogEntry entry(StatementType type, String sql, String... parameters) {
+        QueryInfo query = new QueryInfo(sql);
+        if (parameters.length > 0) {
+            SqlLogEntry.DisplayedParameters parameterSet = new SqlLogEntry.DisplayedParameters(parameters.length);
+            for (int i = 0; i < parameters.length; i++)
+                parameterSet.add(String.valueOf(i + 1), parameters[i]);
+            query.getParametersList().add(parameterSet);
+        }
+        return new SqlLogEntry("a", 0, singletonList(query), type, false, 0, true, 0);
+    }
+}
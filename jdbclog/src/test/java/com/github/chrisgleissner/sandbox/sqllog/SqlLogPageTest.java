@@ -0,0 +1,69 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlLogPageTest {
+    private final SqlLog sqlLog = SqlLog.builder().capacity(4).build();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        sqlLog.destroy();
+    }
+
+    @Test
+    public void tailsThreadIdPageByPage() {
+        for (int i = 0; i < 3; i++)
+            execute("a", "select " + i);
+        SqlLogPage page = sqlLog.getPageForThreadId("a", 0, 2);
+        assertThat(queries(page)).containsExactly("select 0", "select 1");
+        assertThat(page.getNextSequence()).isEqualTo(2);
+        assertThat(page.getMissedCount()).isEqualTo(0);
+
+        page = sqlLog.getPageForThreadId("a", page.getNextSequence(), 2);
+        assertThat(queries(page)).containsExactly("select 2");
+        page = sqlLog.getPageForThreadId("a", page.getNextSequence(), 2);
+        assertThat(page.getEntries()).isEmpty();
+        assertThat(page.getNextSequence()).isEqualTo(3);
+
+        for (int i = 3; i < 9; i++)
+            execute("a", "select " + i);
+        page = sqlLog.getPageForThreadId("a", page.getNextSequence(), 10);
+        assertThat(queries(page)).containsExactly("select 5", "select 6", "select 7", "select 8");
+        assertThat(page.getMissedCount()).isEqualTo(2);
+        assertThat(sqlLog.streamEntriesForThreadId("a", 7).map(e -> e.getQueries().get(0).getQuery()))
+                .containsExactly("select 7", "select 8");
+    }
+
+    @Test
+    public void restartsAtOldestEntryOfRecreatedThreadId() {
+        execute("a", "select 0");
+        execute("a", "select 1");
+        long nextSequence = sqlLog.getPageForThreadId("a", 0, 10).getNextSequence();
+        sqlLog.getAndClearLogsForThreadId("a");
+        assertThat(sqlLog.getPageForThreadId("a", nextSequence, 10).getNextSequence()).isEqualTo(nextSequence);
+
+        execute("a", "select 2");
+        assertThat(queries(sqlLog.getPageForThreadId("a", nextSequence, 10))).containsExactly("select 2");
+    }
+
+    private static List<String> queries(SqlLogPage page) {
+        return page.getEntries().stream().map(e -> e.getQueries().get(0).getQuery()).collect(toList());
+    }
+
+    private void execute(String id, String sql) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setSuccess(true);
+        try (SqlLogContext.Scope scope = SqlLogContext.open(id)) {
+            sqlLog.getConnectionLogs().afterQuery(executionInfo, singletonList(new QueryInfo(sql)));
+        }
+    }
+}
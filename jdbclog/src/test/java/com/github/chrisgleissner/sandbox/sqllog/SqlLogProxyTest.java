@@ -0,0 +1,83 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlLogProxyTest {
+    private final SqlLog sqlLog = SqlLog.builder().capacity(10)
+            .sink(new AsyncSqlLogSink(16, AsyncSqlLogSink.FullQueuePolicy.DISCARD, null, false))
+            .traceMethods(false)
+            .dataSourceNames(singletonList("primary"))
+            .build();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        sqlLog.destroy();
+    }
+
+    @Test
+    public void proxiesSelectedDataSourcesWithoutTracingMethods() throws SQLException {
+        DataSource other = dataSource();
+        assertThat(sqlLog.postProcessAfterInitialization(other, "other")).isSameAs(other);
+
+        DataSource primary = (DataSource) sqlLog.postProcessAfterInitialization(dataSource(), "primary");
+        try (SqlLogContext.Scope scope = SqlLogContext.open("proxy");
+             Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("select 1");
+        }
+        assertThat(sqlLog.getLogsForThreadId("proxy")).containsExactly(
+                "{\"success\":true, \"type\":\"Statement\", \"batch\":false, \"querySize\":1, \"batchSize\":0, \"query\":[\"select 1\"], \"params\":[]}");
+    }
+
+    @Test
+    public void measuresStatisticsWithoutCaptureOverhead() throws Exception {
+        SqlStatistics statistics = new SqlStatistics();
+        SqlLog sqlLog = SqlLog.builder()
+                .sink(new AsyncSqlLogSink(16, AsyncSqlLogSink.FullQueuePolicy.DISCARD, null, false))
+                .statistics(statistics)
+                .sampler(new SqlSampler(1) {
+                    @Override
+                    public boolean sample(ExecutionInfo executionInfo, List<QueryInfo> queryInfos) {
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return true;
+                    }
+                })
+                .build();
+        try {
+            DataSource dataSource = (DataSource) sqlLog.postProcessAfterInitialization(dataSource(), "statistics");
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("select 1");
+            }
+            assertThat(statistics.getAllStats()).hasSize(1);
+            assertThat(statistics.getAllStats().iterator().next().getTotalTimeNanos())
+                    .isLessThan(TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            sqlLog.destroy();
+        }
+    }
+
+    private static DataSource dataSource() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:proxy");
+        return dataSource;
+    }
+}
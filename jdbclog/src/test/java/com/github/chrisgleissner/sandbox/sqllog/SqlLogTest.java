@@ -1,6 +1,7 @@
 package com.github.chrisgleissner.sandbox.sqllog;
 
 import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.StatementType;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,15 +16,23 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static java.lang.String.format;
+import static java.util.Collections.singleton;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Slf4j
 @RunWith(SpringRunner.class)
-@TestPropertySource(properties = "com.github.chrisgleissner.sandbox.sqllog=true")
+@TestPropertySource(properties = {"com.github.chrisgleissner.sandbox.sqllog=true",
+        "com.github.chrisgleissner.sandbox.sqllog.statistics.enabled=true"})
 @SpringBootTest
 public class SqlLogTest {
 
@@ -58,6 +67,29 @@ public class SqlLogTest {
                 "{\"success\":true, \"type\":\"Prepared\", \"batch\":false, \"querySize\":1, \"batchSize\":0, \"query\":[\"select customer0_.id as id1_0_, customer0_.first_name as first_na2_0_, customer0_.last_name as last_nam3_0_ from customer customer0_\"], \"params\":[[]]}");
     }
 
+    @Test
+    public void streamEntries() {
+        try {
+            jdbcTemplate.execute("create table foo (id int)");
+            jdbcTemplate.update("insert into foo (id) values (?)", 42);
+            jdbcTemplate.queryForList("select id from foo where id = 42");
+
+            assertThat(sqlLog.streamEntries().filter(e -> e.getTables().contains("foo")).map(SqlLogEntry::toJson))
+                    .containsExactly(
+                            "{\"success\":true, \"type\":\"Statement\", \"batch\":false, \"querySize\":1, \"batchSize\":0, \"query\":[\"create table foo (id int)\"], \"params\":[]}",
+                            "{\"success\":true, \"type\":\"Prepared\", \"batch\":false, \"querySize\":1, \"batchSize\":0, \"query\":[\"insert into foo (id) values (?)\"], \"params\":[[\"42\"]]}",
+                            "{\"success\":true, \"type\":\"Statement\", \"batch\":false, \"querySize\":1, \"batchSize\":0, \"query\":[\"select id from foo where id = 42\"], \"params\":[]}");
+            assertThat(sqlLog.streamEntriesReferencing("FOO")).containsExactlyElementsOf(
+                    sqlLog.streamEntries().filter(e -> e.getTables().contains("foo")).collect(toList()));
+            assertThat(sqlLog.streamEntries(StatementType.PREPARED).map(SqlLogEntry::getTables))
+                    .containsExactly(singleton("foo"));
+            assertThat(sqlLog.streamLogsContaining("42").count()).isEqualTo(3);
+            assertThat(sqlLog.streamLogsContaining("foo where id = 43")).isEmpty();
+        } finally {
+            jdbcTemplate.execute("drop table foo");
+        }
+    }
+
     @Test
     public void getLogsForThreadId() {
         String id = UUID.randomUUID().toString();
@@ -143,5 +175,84 @@ public class SqlLogTest {
             jdbcTemplate.execute("drop table foo");
         }
     }
-}
 
+    @Test
+    public void getLogsForThreadIdForAsyncJdbc() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            jdbcTemplate.execute("create table foo (id varchar)");
+            Executor executor = SqlLogContext.wrap(executorService);
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (String id : new String[]{"a", "b", "c", "d"}) {
+                try (SqlLogContext.Scope scope = SqlLogContext.open(id)) {
+                    futures.add(CompletableFuture.runAsync(() ->
+                            jdbcTemplate.execute(format("insert into foo (id) values ('%s')", id)), executor));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(2, SECONDS);
+
+            for (String id : new String[]{"a", "b", "c", "d"})
+                assertThat(sqlLog.getLogsForThreadId(id)).containsExactly(format(
+                        "{\"success\":true, \"type\":\"Statement\", \"batch\":false, \"querySize\":1, " +
+                                "\"batchSize\":0, \"query\":[\"insert into foo (id) values ('%s')\"], \"params\":[]}", id));
+        } finally {
+            executorService.shutdown();
+            jdbcTemplate.execute("drop table foo");
+        }
+    }
+
+    @Test
+    public void detectRepeatedQueries() {
+        String id = UUID.randomUUID().toString();
+        sqlLog.setThreadId(id);
+        for (String lastName : new String[]{"Bauer", "Almeida", "Palmer", "Bauer"})
+            repository.findByLastName(lastName);
+        for (int i = 0; i < 3; i++)
+            repository.findAll();
+
+        RepeatedQueryDetector detector = new RepeatedQueryDetector(3);
+        List<RepeatedQuery> repeatedQueries = detector.detect(sqlLog, id);
+        assertThat(repeatedQueries).hasSize(2);
+        RepeatedQuery findByLastName = repeatedQueries.get(0);
+        assertThat(findByLastName.getThreadId()).isEqualTo(id);
+        assertThat(findByLastName.getFingerprint()).endsWith("where customer0_.last_name=?");
+        assertThat(findByLastName.getCount()).isEqualTo(4);
+        assertThat(findByLastName.getDistinctCount()).isEqualTo(3);
+        assertThat(findByLastName.isNPlusOne()).isTrue();
+        assertThat(findByLastName.getSamples()).hasSize(3);
+        assertThat(findByLastName.getSamples().get(0)).endsWith("where customer0_.last_name=? [Bauer]");
+        assertThat(repeatedQueries.get(1).getCount()).isEqualTo(3);
+        assertThat(repeatedQueries.get(1).isNPlusOne()).isFalse();
+
+        assertThatThrownBy(() -> detector.assertNoNPlusOneQueries(sqlLog, id))
+                .isInstanceOf(AssertionError.class).hasMessageContaining("Found 1 N+1 queries").hasMessageContaining("[Palmer]");
+        assertThatThrownBy(() -> detector.assertNoRepeatedQueries(sqlLog, id)).hasMessageContaining("Found 2 queries");
+        new RepeatedQueryDetector(5).assertNoRepeatedQueries(sqlLog, id);
+    }
+
+    @Test
+    public void getTopByTotalTime() {
+        SqlStatistics statistics = sqlLog.getStatistics().get();
+        statistics.clear();
+        try {
+            jdbcTemplate.execute("create table foo (id int)");
+            for (int i = 0; i < 10; i++)
+                jdbcTemplate.update("insert into foo (id) values (" + i + ")");
+            jdbcTemplate.update("insert into foo (id) values (?)", 10);
+            jdbcTemplate.queryForList("select id from foo where id in (1, 2, 3)");
+
+            StatementStats inserts = statistics.getStats("insert into foo (id) values (?+)").get();
+            assertThat(inserts.getCount()).isEqualTo(11);
+            assertThat(inserts.getRowCount()).isEqualTo(11);
+            assertThat(inserts.getErrorCount()).isEqualTo(0);
+            assertThat(inserts.getLatencyNanos().getCount()).isEqualTo(11);
+            assertThat(statistics.getStats("select id from foo where id in (?+)").get().getCount()).isEqualTo(1);
+
+            List<StatementStats> top = statistics.getTopByTotalTime(2);
+            assertThat(top).hasSize(2);
+            assertThat(top.get(0).getTotalTimeNanos()).isGreaterThanOrEqualTo(top.get(1).getTotalTimeNanos());
+        } finally {
+            jdbcTemplate.execute("drop table foo");
+        }
+    }
+}
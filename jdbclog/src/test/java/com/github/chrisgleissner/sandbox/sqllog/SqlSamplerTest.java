@@ -0,0 +1,71 @@
+package com.github.chrisgleissner.sandbox.sqllog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlSamplerTest {
+    private static final List<QueryInfo> HOT = singletonList(new QueryInfo("select * from t where id = 1"));
+    private static final List<QueryInfo> COLD = singletonList(new QueryInfo("select * from u where id = 1"));
+
+    private final SqlSampler sampler = new SqlSampler(100, 50, 10, 100);
+
+    @Test
+    public void samplesHotFingerprintsDownToTheirShareOfTheBudget() {
+        assertThat(sample(HOT, 1000, true, 0)).isEqualTo(100);
+        assertThat(sample(COLD, 20, true, 0)).isEqualTo(10);
+        sampler.adapt();
+
+        assertThat(sample(HOT, 1000, true, 0)).isEqualTo(40);
+        assertThat(sample(COLD, 20, true, 0)).isEqualTo(20);
+        assertThat(sampler.getCount("select * from t where id = ?")).isEqualTo(2000);
+        assertThat(sampler.getSkippedCount("select * from t where id = ?")).isEqualTo(1860);
+        assertThat(sampler.getSkippedCount("select * from u where id = ?")).isEqualTo(10);
+        assertThat(sampler.getSkippedCount()).isEqualTo(1870);
+    }
+
+    @Test
+    public void keepsSamplingHotFingerprintsAfterQuietWindow() {
+        sample(HOT, 1000, true, 0);
+        sampler.adapt();
+        sampler.adapt();
+        assertThat(sample(HOT, 1000, true, 0)).isEqualTo(100);
+    }
+
+    @Test
+    public void countsAlwaysSampledStatementsAgainstTheBudget() {
+        sample(HOT, 1000, true, 0);
+        sampler.adapt();
+        assertThat(sample(HOT, 100, false, 0)).isEqualTo(100);
+        assertThat(sample(HOT, 1000, true, 0)).isEqualTo(0);
+        sampler.adapt();
+        assertThat(sample(HOT, 1100, true, 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void alwaysSamplesFirstOccurrencesErrorsAndSlowStatements() {
+        sample(HOT, 1000, true, 0);
+        sampler.adapt();
+        assertThat(sample(singletonList(new QueryInfo("select * from v")), 10, true, 0)).isEqualTo(10);
+        assertThat(sample(HOT, 100, false, 0)).isEqualTo(100);
+        assertThat(sample(HOT, 100, true, 50)).isEqualTo(100);
+        assertThat(sample(HOT, 100, true, 49)).isLessThan(100);
+    }
+
+    private int sample(List<QueryInfo> queryInfos, int count, boolean success, long elapsedTimeMillis) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setSuccess(success);
+        executionInfo.setElapsedTime(elapsedTimeMillis);
+        int sampled = 0;
+        for (int i = 0; i < count; i++) {
+            if (sampler.sample(executionInfo, queryInfos))
+                sampled++;
+        }
+        return sampled;
+    }
+}
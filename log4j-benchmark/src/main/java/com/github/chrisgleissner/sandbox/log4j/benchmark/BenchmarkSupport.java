@@ -0,0 +1,71 @@
+package com.github.chrisgleissner.sandbox.log4j.benchmark;
+
+import com.github.chrisgleissner.sandbox.log4j.MessageFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates filter configs and messages for the benchmarks. Rule {@code i} matches messages containing
+ * {@code rule-<i>-token}; generated padding text never matches any rule.
+ */
+final class BenchmarkSupport {
+    private static final String PADDING_CHARS = "abcdefghijklmnopqrstuvwxyz      ";
+
+    private BenchmarkSupport() {
+    }
+
+    static MessageFilter messageFilter(int ruleCount, boolean regex, String level, boolean checkStackTrace)
+            throws IOException {
+        File file = File.createTempFile("message-filter-benchmark", ".yaml");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (int i = 0; i < ruleCount; i++) {
+                writer.println("- message: " + (regex ? "rule-" + i + "-tok[a-z]n" : token(i)));
+                writer.println("  level: " + level);
+                writer.println("  regex: " + regex);
+                writer.println("  checkStackTrace: " + checkStackTrace);
+            }
+        }
+        MessageFilter filter = new MessageFilter();
+        filter.setConfigPaths(file.getPath());
+        filter.setReload("none");
+        filter.activateOptions();
+        return filter;
+    }
+
+    static String token(int rule) {
+        return "rule-" + rule + "-token";
+    }
+
+    /**
+     * @return messages of which the specified ratio matches a random rule, in random order
+     */
+    static String[] messages(Random random, int count, int length, double matchRatio, int ruleCount) {
+        List<String> messages = new ArrayList<>();
+        int matchCount = (int) Math.round(count * matchRatio);
+        for (int i = 0; i < count; i++)
+            messages.add(message(random, length, i < matchCount ? token(random.nextInt(ruleCount)) : null));
+        Collections.shuffle(messages, random);
+        return messages.toArray(new String[0]);
+    }
+
+    /**
+     * @param token text placed in the middle of the message or null for a message matching no rule
+     */
+    static String message(Random random, int length, String token) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+            sb.append(PADDING_CHARS.charAt(random.nextInt(PADDING_CHARS.length())));
+        if (token != null) {
+            int start = Math.max(0, (length - token.length()) / 2);
+            sb.replace(start, Math.min(length, start + token.length()), token);
+        }
+        return sb.toString();
+    }
+}
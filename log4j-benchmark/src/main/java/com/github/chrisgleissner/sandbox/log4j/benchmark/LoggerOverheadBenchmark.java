@@ -0,0 +1,85 @@
+package com.github.chrisgleissner.sandbox.log4j.benchmark;
+
+import com.github.chrisgleissner.sandbox.log4j.MessageFilter;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead which a {@link MessageFilter} adds to logging via a configured log4j logger, compared to the
+ * same logger without filter. The appender discards all events, so the result is dominated by log4j and the filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggerOverheadBenchmark {
+    private static final int MESSAGE_COUNT = 1024;
+
+    @Param({"false", "true"})
+    boolean filtered;
+
+    @Param({"10", "100"})
+    int ruleCount;
+
+    @Param({"0", "0.1", "1"})
+    double matchRatio;
+
+    private Logger logger;
+    private DiscardingAppender appender;
+    private String[] messages;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        appender = new DiscardingAppender();
+        if (filtered)
+            appender.addFilter(BenchmarkSupport.messageFilter(ruleCount, false, "warn", false));
+        logger = Logger.getLogger(LoggerOverheadBenchmark.class);
+        logger.setAdditivity(false);
+        logger.setLevel(Level.INFO);
+        logger.addAppender(appender);
+        messages = BenchmarkSupport.messages(new Random(42), MESSAGE_COUNT, 128, matchRatio, ruleCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.removeAppender(appender);
+    }
+
+    @Benchmark
+    public void log() {
+        logger.warn(messages[index++ & (MESSAGE_COUNT - 1)]);
+    }
+
+    private static final class DiscardingAppender extends AppenderSkeleton {
+        @Override protected void append(LoggingEvent event) {
+        }
+
+        @Override public void close() {
+        }
+
+        @Override public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
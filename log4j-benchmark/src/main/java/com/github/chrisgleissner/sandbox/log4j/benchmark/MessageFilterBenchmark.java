@@ -0,0 +1,66 @@
+package com.github.chrisgleissner.sandbox.log4j.benchmark;
+
+import com.github.chrisgleissner.sandbox.log4j.MessageFilter;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MessageFilter#decide(LoggingEvent)} for events without a throwable, cycling through events of which
+ * the specified ratio is matched by a rule.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageFilterBenchmark {
+    private static final int EVENT_COUNT = 1024;
+
+    @Param({"1", "10", "100"})
+    int ruleCount;
+
+    @Param({"false", "true"})
+    boolean regex;
+
+    @Param({"64", "1024"})
+    int messageLength;
+
+    @Param({"0", "0.1", "1"})
+    double matchRatio;
+
+    private MessageFilter filter;
+    private LoggingEvent[] events;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        filter = BenchmarkSupport.messageFilter(ruleCount, regex, "warn", false);
+        Logger logger = Logger.getLogger(MessageFilterBenchmark.class);
+        String[] messages = BenchmarkSupport.messages(new Random(42), EVENT_COUNT, messageLength, matchRatio, ruleCount);
+        events = new LoggingEvent[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; i++)
+            events[i] = new LoggingEvent(Logger.class.getName(), logger, Level.WARN, messages[i], null);
+    }
+
+    @Benchmark
+    public int decide() {
+        return filter.decide(events[index++ & (EVENT_COUNT - 1)]);
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.chrisgleissner.sandbox.log4j.benchmark;
+
+import com.github.chrisgleissner.sandbox.log4j.MessageFilter;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MessageFilter#decide(LoggingEvent)} for events with a throwable whose stack trace is matched
+ * against rules with {@code checkStackTrace: true}. With more distinct throwables than the filter caches per rule set,
+ * every event requires a scan of its stack trace. Matching throwables have a matching root cause message, i.e. only
+ * match at the end of their stack trace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StackTraceBenchmark {
+    private static final int EVENT_COUNT = 4096;
+
+    @Param({"10", "100"})
+    int ruleCount;
+
+    @Param({"10", "50", "200"})
+    int stackTraceDepth;
+
+    @Param({"1", "4096"})
+    int distinctThrowables;
+
+    @Param({"0", "1"})
+    double matchRatio;
+
+    private MessageFilter filter;
+    private LoggingEvent[] events;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        filter = BenchmarkSupport.messageFilter(ruleCount, false, "error", true);
+        Logger logger = Logger.getLogger(StackTraceBenchmark.class);
+        Random random = new Random(42);
+        Throwable[] throwables = new Throwable[distinctThrowables];
+        for (int i = 0; i < distinctThrowables; i++) {
+            String causeMessage = random.nextDouble() < matchRatio ? BenchmarkSupport.token(random.nextInt(ruleCount))
+                    : "cause";
+            throwables[i] = throwable(stackTraceDepth, "failure " + i, causeMessage);
+        }
+        events = new LoggingEvent[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; i++)
+            events[i] = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR, "Request failed",
+                    throwables[i % distinctThrowables]);
+        for (Throwable throwable : throwables)
+            materializeStackTraces(throwable);
+    }
+
+    /**
+     * Lets the JVM create the stack trace elements up front, as any appender would for a logged throwable, so that only
+     * the filter is measured.
+     */
+    private static void materializeStackTraces(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause())
+            t.getStackTrace();
+    }
+
+    /**
+     * @return a throwable with a stack trace of about the specified depth, whose cause message is at its end
+     */
+    private static Throwable throwable(int depth, String message, String causeMessage) {
+        if (depth <= 1)
+            return new IllegalStateException(message, new RuntimeException(causeMessage));
+        return throwable(depth - 1, message, causeMessage);
+    }
+
+    @Benchmark
+    public int decide() {
+        return filter.decide(events[index++ & (EVENT_COUNT - 1)]);
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+
+import java.util.Arrays;
+
+/**
+ * Trie of dot-separated logger categories such as {@code com.foo.Bar}. Looks up the value stored for the longest
+ * category which is equal to, or a parent category of, a logger name, without allocating.
+ */
+final class CategoryTrie<V> {
+    private final Node<V> root = new Node<>("");
+
+    /**
+     * Stores a value for the specified category. The empty category is the root and applies to all loggers. Not
+     * thread-safe; the trie must be safely published after it has been populated.
+     */
+    void put(String category, V value) {
+        Node<V> node = root;
+        int start = 0;
+        while (start < category.length()) {
+            val end = segmentEnd(category, start);
+            Node<V> child = node.child(category, start, end);
+            if (child == null) {
+                child = new Node<>(category.substring(start, end));
+                node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                node.children[node.children.length - 1] = child;
+            }
+            node = child;
+            start = end + 1;
+        }
+        node.value = value;
+    }
+
+    /**
+     * @return the value of the most specific category applying to the specified logger name or null if there is none
+     */
+    V find(String loggerName) {
+        Node<V> node = root;
+        V value = root.value;
+        if (loggerName == null)
+            return value;
+        int start = 0;
+        while (start < loggerName.length()) {
+            val end = segmentEnd(loggerName, start);
+            node = node.child(loggerName, start, end);
+            if (node == null)
+                break;
+            if (node.value != null)
+                value = node.value;
+            start = end + 1;
+        }
+        return value;
+    }
+
+    /**
+     * @return true if the specified category is the root category, equal to the logger name, or a parent of it
+     */
+    static boolean appliesTo(String category, String loggerName) {
+        return category.isEmpty() || category.equals(loggerName)
+                || (loggerName.startsWith(category) && loggerName.charAt(category.length()) == '.');
+    }
+
+    private static int segmentEnd(String s, int start) {
+        val end = s.indexOf('.', start);
+        return end < 0 ? s.length() : end;
+    }
+
+    private static final class Node<V> {
+        private final String segment;
+        @SuppressWarnings("unchecked")
+        private Node<V>[] children = new Node[0];
+        private V value;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        Node<V> child(String s, int start, int end) {
+            val length = end - start;
+            for (val child : children) {
+                if (child.segment.length() == length && s.regionMatches(start, child.segment, 0, length))
+                    return child;
+            }
+            return null;
+        }
+    }
+}
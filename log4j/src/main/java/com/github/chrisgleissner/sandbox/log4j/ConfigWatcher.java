@@ -0,0 +1,192 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+import org.apache.log4j.helpers.LogLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Notifies listeners of changes to config files. All filters share a single daemon thread which blocks on a
+ * {@link WatchService} and, for files which can't be watched, checks their modification time periodically. A directory
+ * is registered with the watch service while any listener watches a file in it.
+ */
+final class ConfigWatcher implements Runnable {
+    private static final long POLL_INTERVAL_MILLIS = 10000;
+    private static ConfigWatcher instance;
+
+    private final WatchService watchService;
+    private final ConcurrentMap<Path, WatchedDir> watchedDirs = new ConcurrentHashMap<>();
+    private final List<Watch> polledWatches = new CopyOnWriteArrayList<>();
+
+    interface Listener {
+        void onChange(File file);
+    }
+
+    private ConfigWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    static synchronized ConfigWatcher getInstance() {
+        if (instance == null) {
+            try {
+                instance = new ConfigWatcher();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to create watch service", e);
+            }
+            val thread = new Thread(instance, ConfigWatcher.class.getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Notifies the listener whenever the specified file is created, modified or deleted.
+     */
+    synchronized void watch(File file, Listener listener) {
+        val watch = new Watch(file, listener);
+        val dir = watch.path.getParent();
+        try {
+            val key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            WatchedDir watchedDir = watchedDirs.get(dir);
+            if (watchedDir == null)
+                watchedDirs.put(dir, watchedDir = new WatchedDir());
+            watchedDir.key = key;
+            watchedDir.watches.add(watch);
+        } catch (IOException | RuntimeException e) {
+            LogLog.warn("Failed to watch " + file + ", polling it instead", e);
+            polledWatches.add(watch);
+        }
+    }
+
+    /**
+     * Notifies the listener whenever the modification time or size of the specified file changes.
+     */
+    void poll(File file, Listener listener) {
+        polledWatches.add(new Watch(file, listener));
+    }
+
+    /**
+     * Stops notifying the listener, and cancels the registration of each directory in which no more files are watched.
+     */
+    synchronized void unwatch(Listener listener) {
+        for (val watchedDir : watchedDirs.values()) {
+            remove(watchedDir.watches, listener);
+            if (watchedDir.watches.isEmpty()) {
+                watchedDir.key.cancel();
+                watchedDirs.remove(watchedDir.key.watchable(), watchedDir);
+            }
+        }
+        remove(polledWatches, listener);
+    }
+
+    /**
+     * @return whether the directory is registered with the watch service
+     */
+    boolean isWatched(File dir) {
+        val watchedDir = watchedDirs.get(dir.getAbsoluteFile().toPath());
+        return watchedDir != null && watchedDir.key.isValid();
+    }
+
+    private static void remove(List<Watch> watches, Listener listener) {
+        for (val watch : watches) {
+            if (watch.listener == listener)
+                watches.remove(watch);
+        }
+    }
+
+    @Override public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                val key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null)
+                    onWatchKey(key);
+                for (val watch : polledWatches) {
+                    if (watch.isModified())
+                        watch.notifyListener();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                LogLog.warn("Failed to check configs of " + MessageFilter.class.getName(), e);
+            }
+        }
+    }
+
+    private void onWatchKey(WatchKey key) {
+        val dir = (Path) key.watchable();
+        val changedPaths = new HashSet<Path>();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW)
+                overflow = true;
+            else
+                changedPaths.add(dir.resolve((Path) event.context()));
+        }
+        key.reset();
+        val watchedDir = watchedDirs.get(dir);
+        if (watchedDir != null) {
+            for (val watch : watchedDir.watches) {
+                if (overflow || changedPaths.contains(watch.path))
+                    watch.notifyListener();
+            }
+        }
+    }
+
+    private static final class WatchedDir {
+        private final List<Watch> watches = new CopyOnWriteArrayList<>();
+        /**
+         * Key of the latest registration, which differs from the previous one if that was cancelled.
+         */
+        private volatile WatchKey key;
+    }
+
+    private static final class Watch {
+        private final File file;
+        private final Path path;
+        private final Listener listener;
+        private long lastModified;
+        private long length;
+
+        Watch(File file, Listener listener) {
+            this.file = file;
+            this.path = file.getAbsoluteFile().toPath();
+            this.listener = listener;
+            this.lastModified = this.file.lastModified();
+            this.length = this.file.length();
+        }
+
+        boolean isModified() {
+            val previousLastModified = lastModified;
+            val previousLength = length;
+            lastModified = file.lastModified();
+            length = file.length();
+            return lastModified != previousLastModified || length != previousLength;
+        }
+
+        void notifyListener() {
+            try {
+                listener.onChange(file);
+            } catch (Throwable e) {
+                LogLog.warn("Failed to reload config for " + MessageFilter.class.getName() + " from " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+
+/**
+ * Bounded cache of the filter item matched by all messages created from the same template, e.g.
+ * {@code "Connected to {}"}, so that repeated messages from the same call site cost one hash lookup instead of a scan
+ * of all rules. A template only determines the match of its messages if it has no parameters, or if the first filter
+ * item of the rules is a literal occurring in its constant text, since any other filter item may be preceded by one
+ * matching a parameter; other templates are cached as undetermined, and their messages are matched as usual.
+ * <p>
+ * The cache is direct-mapped: each template maps to one slot and evicts any other template stored there. Lookups are
+ * lock-free; entries are immutable and thus safely published without synchronization. A cache belongs to a
+ * {@link RuleSet}, so it is discarded whenever the config is reloaded.
+ */
+final class DecisionCache {
+    private static final String PLACEHOLDER = "{}";
+
+    private final Decision[] decisions;
+    private final int mask;
+
+    DecisionCache(int size) {
+        int capacity = 1;
+        while (capacity < size)
+            capacity <<= 1;
+        this.decisions = new Decision[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the decision for all messages with the specified template and rules; never null
+     */
+    Decision get(RuleSet.Rules rules, String template) {
+        int hash = template.hashCode() * 31 + System.identityHashCode(rules);
+        val index = (hash ^ (hash >>> 16)) & mask;
+        val decision = decisions[index];
+        if (decision != null && decision.rules == rules && decision.template.equals(template))
+            return decision;
+        val newDecision = decide(rules, template);
+        decisions[index] = newDecision;
+        return newDecision;
+    }
+
+    private static Decision decide(RuleSet.Rules rules, String template) {
+        if (template.indexOf('\\') >= 0)
+            return new Decision(rules, template, false, null);
+        if (!template.contains(PLACEHOLDER))
+            return new Decision(rules, template, true, rules.matchMessage(template));
+        int from = 0;
+        while (from <= template.length()) {
+            int to = template.indexOf(PLACEHOLDER, from);
+            if (to < 0)
+                to = template.length();
+            val match = rules.matchMessageLiterals(template, from, to);
+            if (match != null && rules.isFirst(match))
+                return new Decision(rules, template, true, match);
+            from = to + PLACEHOLDER.length();
+        }
+        return new Decision(rules, template, false, null);
+    }
+
+    static final class Decision {
+        private final RuleSet.Rules rules;
+        private final String template;
+        private final boolean determined;
+        private final FilterItem match;
+
+        private Decision(RuleSet.Rules rules, String template, boolean determined, FilterItem match) {
+            this.rules = rules;
+            this.template = template;
+            this.determined = determined;
+            this.match = match;
+        }
+
+        /**
+         * @return whether the template alone determines the match of its messages
+         */
+        boolean isDetermined() {
+            return determined;
+        }
+
+        /**
+         * @return the filter item matching all messages of the template or null if none does; only valid if
+         * {@link #isDetermined()}
+         */
+        FilterItem getMatch() {
+            return match;
+        }
+    }
+}
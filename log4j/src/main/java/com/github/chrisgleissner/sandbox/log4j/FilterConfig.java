@@ -0,0 +1,127 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.Getter;
+import lombok.val;
+import org.apache.log4j.helpers.LogLog;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filter items read from a comma-separated list of YAML config files. The current filter items are published as an
+ * immutable {@link RuleSet}. Changes to a config file cause only this file to be re-read and only changed filter items
+ * to be recompiled.
+ */
+class FilterConfig {
+    private final Map<File, Map<Map<String, Object>, FilterItem>> filterItemsByFile = new LinkedHashMap<>();
+    private final ConfigWatcher.Listener listener = new ConfigWatcher.Listener() {
+        @Override public void onChange(File file) {
+            reload(file);
+        }
+    };
+    private final ReloadMode reloadMode;
+    private final int decisionCacheSize;
+    @Getter private volatile RuleSet ruleSet;
+
+    enum ReloadMode {
+        /**
+         * Reloads a config file as soon as it is changed, using a {@link java.nio.file.WatchService}.
+         */
+        WATCH,
+        /**
+         * Reloads a config file when its modification time or size changes, checked periodically. For file systems
+         * which don't support watching.
+         */
+        POLL,
+        /**
+         * Never reloads.
+         */
+        NONE
+    }
+
+    FilterConfig(String configPathNameString, ReloadMode reloadMode) {
+        this(configPathNameString, reloadMode, 0);
+    }
+
+    /**
+     * @param decisionCacheSize number of message templates whose match is cached; 0 disables the cache
+     */
+    FilterConfig(String configPathNameString, ReloadMode reloadMode, int decisionCacheSize) {
+        this.reloadMode = reloadMode;
+        this.decisionCacheSize = decisionCacheSize;
+        for (val configPathName : configPathNameString.split(","))
+            filterItemsByFile.put(new File(configPathName.trim()), Collections.<Map<String, Object>, FilterItem>emptyMap());
+        synchronized (this) {
+            for (val file : filterItemsByFile.keySet())
+                filterItemsByFile.put(file, loadFilterItems(file, filterItemsByFile.get(file)));
+            this.ruleSet = new RuleSet(getFilterItems(), null, decisionCacheSize);
+        }
+        if (reloadMode != ReloadMode.NONE) {
+            for (val file : filterItemsByFile.keySet()) {
+                if (reloadMode == ReloadMode.WATCH)
+                    ConfigWatcher.getInstance().watch(file, listener);
+                else
+                    ConfigWatcher.getInstance().poll(file, listener);
+            }
+        }
+    }
+
+    /**
+     * Stops reloading changed config files.
+     */
+    void close() {
+        if (reloadMode != ReloadMode.NONE)
+            ConfigWatcher.getInstance().unwatch(listener);
+    }
+
+    synchronized void reload(File file) {
+        val filterItems = filterItemsByFile.get(file);
+        val reloadedFilterItems = loadFilterItems(file, filterItems);
+        if (!reloadedFilterItems.equals(filterItems)) {
+            filterItemsByFile.put(file, reloadedFilterItems);
+            this.ruleSet = new RuleSet(getFilterItems(), ruleSet, decisionCacheSize);
+        }
+    }
+
+    private List<FilterItem> getFilterItems() {
+        val result = new ArrayList<FilterItem>();
+        for (val filterItems : filterItemsByFile.values())
+            result.addAll(filterItems.values());
+        return result;
+    }
+
+    /**
+     * @param previousFilterItems filter items previously read from the file, reused for unchanged YAML filter items
+     * @return filter items by their YAML representation; the previous filter items if the file can't be read
+     */
+    private static Map<Map<String, Object>, FilterItem> loadFilterItems(File file,
+                                                                        Map<Map<String, Object>, FilterItem> previousFilterItems) {
+        try {
+            val filterItems = new LinkedHashMap<Map<String, Object>, FilterItem>();
+            if (file.isFile()) {
+                try (val is = new FileInputStream(file)) {
+                    val yamlFilterItems = new Yaml().<List<Map<String, Object>>>load(is);
+                    if (yamlFilterItems != null) {
+                        for (val yamlFilterItem : yamlFilterItems) {
+                            val previousFilterItem = previousFilterItems.get(yamlFilterItem);
+                            filterItems.put(yamlFilterItem, previousFilterItem == null
+                                    ? new FilterItem(yamlFilterItem) : previousFilterItem);
+                        }
+                    }
+                }
+            }
+            LogLog.debug("Read config for " + MessageFilter.class.getName() + " from " + file + ": " + filterItems.values());
+            return filterItems;
+        } catch (IOException | RuntimeException e) {
+            LogLog.warn("Failed to read config for " + MessageFilter.class.getName() + " from " + file, e);
+            return previousFilterItems;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+import lombok.val;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filter rule as read from a YAML config file.
+ */
+@Value
+class FilterItem {
+    String message;
+    Severity level;
+    String logger;
+    @ToString.Exclude @EqualsAndHashCode.Exclude Pattern messagePattern;
+    /**
+     * Literals which any message matched by the {@link #messagePattern} contains; checked before running the regex.
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @Getter(AccessLevel.NONE) String[] requiredLiterals;
+    @ToString.Exclude @EqualsAndHashCode.Exclude @Getter(AccessLevel.NONE) ThreadLocal<Matcher> matchers;
+    boolean regex;
+    boolean checkStackTrace;
+    RuleAction action;
+    @ToString.Exclude @EqualsAndHashCode.Exclude LongAdder hits = new LongAdder();
+
+    FilterItem(Map<String, Object> yamlFilterItem) {
+        this.message = (String) yamlFilterItem.get("message");
+        if (this.message == null)
+            throw new IllegalArgumentException("Missing message");
+        this.checkStackTrace = getBoolean(yamlFilterItem, "checkStackTrace");
+        this.regex = getBoolean(yamlFilterItem, "regex");
+        this.messagePattern = regex ? Pattern.compile(this.message) : null;
+        this.requiredLiterals = regex ? RegexLiterals.of(this.message).toArray(new String[0]) : null;
+        this.matchers = regex ? new ThreadLocal<Matcher>() {
+            @Override protected Matcher initialValue() {
+                return messagePattern.matcher("");
+            }
+        } : null;
+        this.level = Severity.parse((String) yamlFilterItem.get("level"));
+        val logger = (String) yamlFilterItem.get("logger");
+        this.logger = logger == null ? "" : logger.trim();
+        this.action = RuleAction.of(yamlFilterItem);
+    }
+
+    static boolean getBoolean(Map<String, Object> map, String key) {
+        val value = (Boolean) map.get(key);
+        return value != null && value;
+    }
+
+    boolean matches(CharSequence s) {
+        if (messagePattern == null)
+            return indexOf(s, message) >= 0;
+        for (val requiredLiteral : requiredLiterals) {
+            if (indexOf(s, requiredLiteral) < 0)
+                return false;
+        }
+        val matcher = matchers.get();
+        val matches = matcher.reset(s).matches();
+        matcher.reset("");
+        return matches;
+    }
+
+    static int indexOf(CharSequence s, String literal) {
+        val last = s.length() - literal.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < literal.length() && s.charAt(i + j) == literal.charAt(j))
+                j++;
+            if (j == literal.length())
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * {@link AsyncAppender} whose {@link #doAppend(LoggingEvent)} isn't synchronized. Like any log4j appender,
+ * {@link AsyncAppender} runs its filters, typically a {@link MessageFilter}, on the calling thread before an event is
+ * enqueued, so denied events never take up buffer capacity; but it does so while holding the appender's lock, so all
+ * logging threads are serialized on filtering. This appender runs the threshold check and the filters without that
+ * lock, and closes its {@link MessageFilter}s when it is closed:
+ * <pre>{@code
+ * <appender name="async" class="com.github.chrisgleissner.sandbox.log4j.FilteringAsyncAppender">
+ *     <param name="BufferSize" value="512"/>
+ *     <param name="Blocking" value="false"/>
+ *     <appender-ref ref="console"/>
+ *     <filter class="com.github.chrisgleissner.sandbox.log4j.MessageFilter">
+ *         <param name="ConfigPaths" value="filter.yaml"/>
+ *     </filter>
+ * </appender>
+ * }</pre>
+ * As with {@link AsyncAppender}, the filter must be attached to this appender rather than to the appenders it
+ * dispatches to, since those only see an event after it was enqueued, and {@code Blocking} determines whether a
+ * calling thread waits for space in a full buffer (default) or its event is discarded and counted in a summary event.
+ */
+public class FilteringAsyncAppender extends AsyncAppender {
+    /**
+     * Set before {@link AsyncAppender#close()}, whose {@code closed} flag is neither volatile nor written under the
+     * lock which {@link org.apache.log4j.AppenderSkeleton#doAppend(LoggingEvent)} holds while reading it.
+     */
+    private volatile boolean closing;
+
+    /**
+     * Same as {@link org.apache.log4j.AppenderSkeleton#doAppend(LoggingEvent)}, but not synchronized, since
+     * {@link AsyncAppender#append(LoggingEvent)} guards its buffer itself and filters are thread-safe.
+     */
+    @Override
+    public void doAppend(LoggingEvent event) {
+        if (closing) {
+            LogLog.error("Attempted to append to closed appender named [" + getName() + "].");
+            return;
+        }
+        if (!isAsSevereAsThreshold(event.getLevel()))
+            return;
+        Filter filter = getFirstFilter();
+        while (filter != null) {
+            switch (filter.decide(event)) {
+                case Filter.DENY:
+                    return;
+                case Filter.ACCEPT:
+                    filter = null;
+                    break;
+                default:
+                    filter = filter.getNext();
+            }
+        }
+        append(event);
+    }
+
+    /**
+     * Closes the appender as well as its {@link MessageFilter}s, which log4j doesn't close.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        super.close();
+        for (Filter filter = getFirstFilter(); filter != null; filter = filter.getNext()) {
+            if (filter instanceof MessageFilter)
+                ((MessageFilter) filter).close();
+        }
+    }
+}
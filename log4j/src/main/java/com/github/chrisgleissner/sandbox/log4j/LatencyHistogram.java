@@ -0,0 +1,77 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with one bucket per power of two nanoseconds. Recording is lock-free and contends only on
+ * the striped cells of a {@link LongAdder}.
+ */
+final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    void record(long nanos) {
+        buckets[nanos < 2 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)].increment();
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos))
+            currentMax = max.get();
+    }
+
+    long getCount() {
+        long count = 0;
+        for (val bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return counts of latencies by bucket, where bucket {@code i > 0} holds latencies in {@code [2^i, 2^(i+1))}
+     * nanoseconds and bucket 0 holds latencies below 2 nanoseconds
+     */
+    long[] getCounts() {
+        val counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    /**
+     * @return upper bound of the bucket containing the specified percentile, capped at the maximum recorded latency
+     */
+    long getPercentile(double percentile) {
+        val counts = getCounts();
+        long count = 0;
+        for (val bucketCount : counts)
+            count += bucketCount;
+        if (count == 0)
+            return 0;
+        val rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+                return i == BUCKETS - 1 ? max.get() : Math.min((1L << (i + 1)) - 1, max.get());
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (val bucket : buckets)
+            bucket.reset();
+        max.set(0);
+    }
+}
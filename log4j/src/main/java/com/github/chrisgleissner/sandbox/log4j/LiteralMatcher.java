@@ -0,0 +1,149 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over the literal messages of a list of filter items. Finds the first filter item whose
+ * message occurs in a string with a single scan of that string, independent of the number of filter items.
+ */
+final class LiteralMatcher {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final List<FilterItem> filterItems;
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+    private final int[] failures;
+    private final int[] outputs;
+
+    LiteralMatcher(List<FilterItem> filterItems) {
+        this.filterItems = new ArrayList<>(filterItems);
+
+        val chars = new ArrayList<char[]>();
+        val targets = new ArrayList<int[]>();
+        val nodeOutputs = new ArrayList<Integer>();
+        chars.add(new char[0]);
+        targets.add(new int[0]);
+        nodeOutputs.add(NONE);
+
+        for (int i = 0; i < this.filterItems.size(); i++) {
+            val message = this.filterItems.get(i).getMessage();
+            int node = ROOT;
+            for (int j = 0; j < message.length(); j++) {
+                val c = message.charAt(j);
+                int next = transition(chars.get(node), targets.get(node), c);
+                if (next == NONE) {
+                    next = chars.size();
+                    chars.add(new char[0]);
+                    targets.add(new int[0]);
+                    nodeOutputs.add(NONE);
+                    addTransition(chars, targets, node, c, next);
+                }
+                node = next;
+            }
+            if (nodeOutputs.get(node) == NONE)
+                nodeOutputs.set(node, i);
+        }
+
+        val nodeCount = chars.size();
+        this.transitionChars = chars.toArray(new char[nodeCount][]);
+        this.transitionTargets = targets.toArray(new int[nodeCount][]);
+        this.outputs = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
+            outputs[i] = nodeOutputs.get(i);
+        this.failures = new int[nodeCount];
+        buildFailures();
+    }
+
+    private static void addTransition(List<char[]> chars, List<int[]> targets, int node, char c, int target) {
+        val nodeChars = chars.get(node);
+        val nodeTargets = targets.get(node);
+        int insertAt = -(Arrays.binarySearch(nodeChars, c) + 1);
+        val newChars = new char[nodeChars.length + 1];
+        val newTargets = new int[nodeTargets.length + 1];
+        System.arraycopy(nodeChars, 0, newChars, 0, insertAt);
+        System.arraycopy(nodeTargets, 0, newTargets, 0, insertAt);
+        newChars[insertAt] = c;
+        newTargets[insertAt] = target;
+        System.arraycopy(nodeChars, insertAt, newChars, insertAt + 1, nodeChars.length - insertAt);
+        System.arraycopy(nodeTargets, insertAt, newTargets, insertAt + 1, nodeTargets.length - insertAt);
+        chars.set(node, newChars);
+        targets.set(node, newTargets);
+    }
+
+    private static int transition(char[] chars, int[] targets, char c) {
+        val i = Arrays.binarySearch(chars, c);
+        return i < 0 ? NONE : targets[i];
+    }
+
+    /**
+     * Computes failure links breadth-first and merges the output of each node's failure node into the node's own
+     * output, so that a scan only needs to inspect the current node to detect a match.
+     */
+    private void buildFailures() {
+        val queue = new int[failures.length];
+        int head = 0, tail = 0;
+        for (val child : transitionTargets[ROOT]) {
+            failures[child] = ROOT;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            val node = queue[head++];
+            val fail = failures[node];
+            if (outputs[fail] != NONE && (outputs[node] == NONE || outputs[fail] < outputs[node]))
+                outputs[node] = outputs[fail];
+            for (int i = 0; i < transitionChars[node].length; i++) {
+                val c = transitionChars[node][i];
+                val child = transitionTargets[node][i];
+                int state = fail;
+                int next = transition(transitionChars[state], transitionTargets[state], c);
+                while (next == NONE && state != ROOT) {
+                    state = failures[state];
+                    next = transition(transitionChars[state], transitionTargets[state], c);
+                }
+                failures[child] = next == NONE ? ROOT : next;
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return filterItems.isEmpty();
+    }
+
+    /**
+     * @return the first filter item in list order whose message occurs in the specified string or null if there is
+     * none
+     */
+    FilterItem find(CharSequence s) {
+        return find(s, 0, s.length());
+    }
+
+    /**
+     * Scans the whole range unless the first filter item is found, since a filter item found later in the range may
+     * precede those found so far.
+     *
+     * @return the first filter item in list order whose message occurs in the specified range of a string or null if
+     * there is none
+     */
+    FilterItem find(CharSequence s, int from, int to) {
+        int match = outputs[ROOT];
+        int state = ROOT;
+        for (int i = from; match != 0 && i < to; i++) {
+            val c = s.charAt(i);
+            int next = transition(transitionChars[state], transitionTargets[state], c);
+            while (next == NONE && state != ROOT) {
+                state = failures[state];
+                next = transition(transitionChars[state], transitionTargets[state], c);
+            }
+            state = next == NONE ? ROOT : next;
+            if (outputs[state] != NONE && (match == NONE || outputs[state] < match))
+                match = outputs[state];
+        }
+        return match == NONE ? null : filterItems.get(match);
+    }
+}
@@ -0,0 +1,268 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableMessageFactory;
+import org.apache.logging.log4j.message.ReusableParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableSimpleMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Log4j 2 port of {@link MessageFilter}, reading the same YAML config files:
+ * <pre>{@code
+ * <MessageFilter name="console" configPaths="filter.yaml,filter2.yaml" reload="watch" onMatch="DENY" onMismatch="NEUTRAL"
+ *                decisionCacheSize="1024"/>
+ * }</pre>
+ * When used as a context-wide or logger filter, rules are evaluated before a {@link Message} or {@link LogEvent} is
+ * created. Parameterized messages are formatted into a reused per-thread buffer via the thread-local messages of a
+ * {@link ReusableMessageFactory}, so that the steady-state path doesn't allocate and works with garbage-free and
+ * asynchronous loggers. If a {@link DecisionCache} is configured, messages whose template determines the match aren't
+ * formatted at all.
+ * <p>
+ * Unlike {@link MessageFilter}, events allowed by a rate-limiting or sampling filter item don't carry the number of
+ * suppressed events, since Log4j 2 events are immutable once created.
+ */
+@Plugin(name = "MessageFilter", category = Node.CATEGORY, elementType = Filter.ELEMENT_TYPE, printObject = true)
+public final class Log4j2MessageFilter extends AbstractFilter {
+    private static final int MAX_BUFFER_CAPACITY = 4096;
+    private static final String SUMMARY_LOGGER_NAME = Log4j2MessageFilter.class.getName();
+    private static final AtomicInteger instanceCount = new AtomicInteger();
+    private static final ThreadLocal<StringBuilder> messageBuffer = new ThreadLocal<StringBuilder>() {
+        @Override protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private final FilterConfig config;
+    private final MessageFilterStats stats = new MessageFilterStats();
+
+    private Log4j2MessageFilter(FilterConfig config, String name, Result onMatch, Result onMismatch) {
+        super(onMatch, onMismatch);
+        this.config = config;
+        stats.setConfig(config);
+        stats.register(name);
+        Summaries.getInstance().register(config, new Summaries.Sink() {
+            @Override public void summarize(FilterItem filterItem, long suppressedCount) {
+                LogManager.getLogger(SUMMARY_LOGGER_NAME).log(Level.toLevel(filterItem.getLevel().name()),
+                        Summaries.message(filterItem, suppressedCount));
+            }
+        });
+    }
+
+    @PluginFactory
+    public static Log4j2MessageFilter createFilter(@PluginAttribute("configPaths") String configPaths,
+                                                   @PluginAttribute(value = "reload", defaultString = "watch") String reload,
+                                                   @PluginAttribute("name") String name,
+                                                   @PluginAttribute(value = "onMatch", defaultString = "DENY") Result onMatch,
+                                                   @PluginAttribute(value = "onMismatch", defaultString = "NEUTRAL") Result onMismatch,
+                                                   @PluginAttribute(value = "decisionCacheSize", defaultInt = 0) int decisionCacheSize) {
+        if (configPaths == null)
+            throw new IllegalArgumentException("Missing configPaths");
+        return new Log4j2MessageFilter(
+                new FilterConfig(configPaths, FilterConfig.ReloadMode.valueOf(reload.trim().toUpperCase()),
+                        decisionCacheSize),
+                name == null ? "Log4j2MessageFilter-" + instanceCount.incrementAndGet() : name, onMatch, onMismatch);
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        val stopped = super.stop(timeout, timeUnit);
+        config.close();
+        Summaries.getInstance().unregister(config);
+        stats.unregister();
+        return stopped;
+    }
+
+    @Override
+    public Result filter(LogEvent event) {
+        return filter(event.getLevel(), event.getLoggerName(), event.getMessage(), event.getThrown(), false);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Message msg, Throwable t) {
+        return filter(level, logger.getName(), msg, t, false);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Object msg, Throwable t) {
+        return filter(level, logger.getName(), msg instanceof CharSequence ? (CharSequence) msg : String.valueOf(msg), t);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object... params) {
+        if (params == null || params.length == 0)
+            return filter(level, logger.getName(), msg, null);
+        return filter(level, logger.getName(), ReusableMessageFactory.INSTANCE.newMessage(msg, params), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0) {
+        return filter(level, logger.getName(), ReusableMessageFactory.INSTANCE.newMessage(msg, p0), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1) {
+        return filter(level, logger.getName(), ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2) {
+        return filter(level, logger.getName(), ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3) {
+        return filter(level, logger.getName(), ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2, p3),
+                null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4) {
+        return filter(level, logger.getName(), ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2, p3, p4),
+                null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5) {
+        return filter(level, logger.getName(),
+                ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2, p3, p4, p5), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6) {
+        return filter(level, logger.getName(),
+                ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2, p3, p4, p5, p6), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6, Object p7) {
+        return filter(level, logger.getName(),
+                ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2, p3, p4, p5, p6, p7), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6, Object p7, Object p8) {
+        return filter(level, logger.getName(),
+                ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2, p3, p4, p5, p6, p7, p8), null, true);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6, Object p7, Object p8, Object p9) {
+        return filter(level, logger.getName(),
+                ReusableMessageFactory.INSTANCE.newMessage(msg, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9), null, true);
+    }
+
+    /**
+     * @param release whether the message was obtained from the {@link ReusableMessageFactory} and must be released
+     */
+    private Result filter(Level level, String loggerName, Message message, Throwable throwable, boolean release) {
+        try {
+            val ruleSet = config.getRuleSet();
+            val rules = ruleSet.getRules(severity(level), loggerName);
+            if (rules == null || SUMMARY_LOGGER_NAME.equals(loggerName))
+                return onMismatch;
+            val startNanos = System.nanoTime();
+            if (message == null)
+                return decide(startNanos, rules, null, null, null);
+            if (throwable == null)
+                throwable = message.getThrowable();
+            val decision = ruleSet.getDecision(rules, template(message));
+            if (decision != null && decision.isDetermined())
+                return decide(startNanos, rules, decision, null, throwable);
+            if (!(message instanceof StringBuilderFormattable))
+                return decide(startNanos, rules, null, message.getFormattedMessage(), throwable);
+            val buffer = messageBuffer.get();
+            buffer.setLength(0);
+            ((StringBuilderFormattable) message).formatTo(buffer);
+            val result = decide(startNanos, rules, null, buffer, throwable);
+            if (buffer.capacity() > MAX_BUFFER_CAPACITY)
+                messageBuffer.remove();
+            return result;
+        } finally {
+            if (release)
+                ReusableMessageFactory.release(message);
+        }
+    }
+
+    private Result filter(Level level, String loggerName, CharSequence text, Throwable throwable) {
+        val ruleSet = config.getRuleSet();
+        val rules = ruleSet.getRules(severity(level), loggerName);
+        if (rules == null || SUMMARY_LOGGER_NAME.equals(loggerName))
+            return onMismatch;
+        val startNanos = System.nanoTime();
+        val decision = text instanceof String ? ruleSet.getDecision(rules, (String) text) : null;
+        return decide(startNanos, rules, decision, text, throwable);
+    }
+
+    /**
+     * @return the format of a message whose formatted text consists of the format with its {@code {}} placeholders
+     * replaced, or null if the message is of a different kind
+     */
+    private static String template(Message message) {
+        return message instanceof ReusableParameterizedMessage || message instanceof ParameterizedMessage
+                || message instanceof ReusableSimpleMessage || message instanceof SimpleMessage ? message.getFormat() : null;
+    }
+
+    /**
+     * @param decision cached decision for the message template; the text is only matched if it is not determined
+     */
+    private Result decide(long startNanos, RuleSet.Rules rules, DecisionCache.Decision decision, CharSequence text,
+                          Throwable throwable) {
+        FilterItem match = decision != null && decision.isDetermined() ? decision.getMatch()
+                : text == null ? null : rules.matchMessage(text);
+        if (throwable != null && rules.isCheckStackTrace(match))
+            match = rules.matchStackTrace(throwable, match);
+        boolean denied = false;
+        if (match != null) {
+            match.getHits().increment();
+            denied = match.getAction().allow() == RuleAction.DENIED;
+        }
+        stats.recordDecision(startNanos, denied);
+        return denied ? onMatch : onMismatch;
+    }
+
+    private static Severity severity(Level level) {
+        val standardLevel = level.getStandardLevel();
+        if (level.intLevel() != standardLevel.intLevel())
+            return null;
+        switch (standardLevel) {
+            case OFF: return Severity.OFF;
+            case FATAL: return Severity.FATAL;
+            case ERROR: return Severity.ERROR;
+            case WARN: return Severity.WARN;
+            case INFO: return Severity.INFO;
+            case DEBUG: return Severity.DEBUG;
+            case TRACE: return Severity.TRACE;
+            case ALL: return Severity.ALL;
+            default: return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MessageFilter(" + config.getRuleSet().getFilterItems() + ")";
+    }
+}
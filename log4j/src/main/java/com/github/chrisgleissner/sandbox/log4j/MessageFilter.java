@@ -1,143 +1,181 @@
 package com.github.chrisgleissner.sandbox.log4j;
 
-import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.ToString;
-import lombok.Value;
 import lombok.val;
 import org.apache.log4j.Level;
-import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.Logger;
 import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
-import org.yaml.snakeyaml.Yaml;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Filters messages with a certain level and a log message or stack trace matching a specified string or regex.
+ * Filters messages with a certain level, optionally logged by a certain logger category, and a log message or stack
+ * trace matching a specified string or regex. Matching events are denied, or rate-limited or sampled as configured
+ * by the {@link RuleAction} of the matching filter item. Summaries of suppressed events are logged at the level of the
+ * filter item by the logger named after this class, whose events this filter doesn't match.
+ * <p>
+ * The filter's statistics are registered as an MBean under its name until it is closed. Since log4j 1.2 doesn't close
+ * filters, a filter activated under the name of another filter closes that one, e.g. the filter it replaces when
+ * log4j is reconfigured; set a name to benefit from this. {@link FilteringAsyncAppender} closes its filters.
+ * <p>
+ * Unlike {@link Log4j2MessageFilter}, this filter doesn't cache decisions, since log4j 1.2 events carry the formatted
+ * message rather than its template, so there would be one cache entry per distinct message.
  */
 @NoArgsConstructor
 public class MessageFilter extends Filter {
-    private static final AtomicLong deniedCount = new AtomicLong();
-    private Config config;
+    /**
+     * Event property holding the number of events suppressed by a rate-limiting or sampling filter item since it last
+     * allowed an event. Only set if events were suppressed; can be logged via {@code %X{suppressedCount}}.
+     */
+    public static final String SUPPRESSED_COUNT_PROPERTY = "suppressedCount";
+    private static final String SUMMARY_LOGGER_NAME = MessageFilter.class.getName();
+    private static final AtomicInteger instanceCount = new AtomicInteger();
+    private static final LongAdder deniedCount = new LongAdder();
+    private static final ConcurrentMap<String, MessageFilter> activeFiltersByName = new ConcurrentHashMap<>();
+    private final MessageFilterStats stats = new MessageFilterStats();
+    private String name = "MessageFilter-" + instanceCount.incrementAndGet();
+    private String configPaths;
+    private FilterConfig.ReloadMode reload = FilterConfig.ReloadMode.WATCH;
+    private volatile FilterConfig config;
+    private boolean closed;
 
     public static long getDeniedCount() {
-        return deniedCount.get();
+        return deniedCount.sum();
     }
 
     public void setConfigPaths(String s) {
-        this.config = new Config(s);
+        this.configPaths = s;
     }
 
-    public int decide(LoggingEvent event) {
-        for (val filterItem : config.getFilterItems()) {
-            if (filterItem.matches(event)) {
-                deniedCount.incrementAndGet();
-                return Filter.DENY;
-            }
-        }
-        return Filter.NEUTRAL;
+    /**
+     * @param s name under which the filter's statistics are registered as an MBean
+     */
+    public void setName(String s) {
+        this.name = s;
     }
 
-    private static class Config {
-        private final List<String> configPathNames;
-        @Getter private List<FilterItem> filterItems;
+    /**
+     * @param s how to reload changed config files: {@code watch} (default), {@code poll} or {@code none}
+     */
+    public void setReload(String s) {
+        this.reload = FilterConfig.ReloadMode.valueOf(s.trim().toUpperCase());
+    }
 
-        Config(String configPathNameString) {
-            this.configPathNames = Arrays.asList(configPathNameString.split(","));
-            this.filterItems = loadFilterItems();
-            Executors.newScheduledThreadPool(1, new ThreadFactory() {
-                public Thread newThread(Runnable r) {
-                    Thread t = Executors.defaultThreadFactory().newThread(r);
-                    t.setDaemon(true);
-                    return t;
-                }
-            }).scheduleAtFixedRate(new Runnable() {
-                @Override public void run() {
-                    Config.this.filterItems = loadFilterItems();
-                }
-            }, 5, 5, TimeUnit.MINUTES);
+    /**
+     * Reads the config files, replacing any config read before.
+     */
+    @Override
+    public synchronized void activateOptions() {
+        if (config != null) {
+            config.close();
+            Summaries.getInstance().unregister(config);
         }
+        this.config = null;
+        this.closed = false;
+        getConfig();
+    }
 
-        List<FilterItem> loadFilterItems() {
-            val result = new ArrayList<FilterItem>();
-            for (val configPathName : configPathNames) {
-                try {
-                    result.addAll(loadFilterItems(new File(configPathName)));
-                } catch (Throwable e) {
-                    LogLog.warn("Failed to read config for " + MessageFilter.class.getName() + " from " + configPathName, e);
-                }
-            }
-            return result;
+    /**
+     * Stops reloading the config and unregisters the MBean; the filter is neutral from now on.
+     */
+    public synchronized void close() {
+        if (config != null) {
+            config.close();
+            Summaries.getInstance().unregister(config);
         }
+        this.config = null;
+        this.closed = true;
+        stats.unregister();
+        activeFiltersByName.remove(name, this);
+    }
 
-        List<FilterItem> loadFilterItems(File file) throws IOException {
-            val filterItems = new ArrayList<FilterItem>();
-            if (file.isFile()) {
-                try (val is = new FileInputStream(file)) {
-                    for (val yamlFilterItem : new Yaml().<List<Map<String, Object>>>load(is)) {
-                        filterItems.add(new FilterItem(yamlFilterItem));
+    /**
+     * @return the config, read on first use if {@link #activateOptions()} wasn't called; null if no config paths are
+     * set
+     */
+    private FilterConfig getConfig() {
+        val config = this.config;
+        if (config != null || configPaths == null)
+            return config;
+        synchronized (this) {
+            if (this.config == null && !closed) {
+                val previous = activeFiltersByName.put(name, this);
+                if (previous != null && previous != this)
+                    previous.close();
+                this.config = new FilterConfig(configPaths, reload);
+                stats.setConfig(this.config);
+                stats.register(name);
+                Summaries.getInstance().register(this.config, new Summaries.Sink() {
+                    @Override public void summarize(FilterItem filterItem, long suppressedCount) {
+                        Logger.getLogger(SUMMARY_LOGGER_NAME).log(Level.toLevel(filterItem.getLevel().name()),
+                                Summaries.message(filterItem, suppressedCount));
                     }
-                }
+                });
             }
-            LogLog.debug("Read config for " + MessageFilter.class.getName() + " from " + file + ": " + filterItems);
-            return filterItems;
+            return this.config;
         }
     }
 
-    @Value
-    static class FilterItem {
-        String message;
-        Level level;
-        @ToString.Exclude Pattern messagePattern;
-        boolean regex;
-        boolean checkStackTrace;
-
-        FilterItem(Map<String, Object> yamlFilterItem) {
-            this.message = (String) yamlFilterItem.get("message");
-            if (this.message == null)
-                throw new IllegalArgumentException("Missing message");
-            this.checkStackTrace = getBoolean(yamlFilterItem, "checkStackTrace");
-            this.regex = getBoolean(yamlFilterItem, "regex");
-            this.messagePattern = regex ? Pattern.compile(this.message) : null;
-            this.level = Level.toLevel((String) yamlFilterItem.get("level"));
+    public int decide(LoggingEvent event) {
+        val config = getConfig();
+        if (config == null || SUMMARY_LOGGER_NAME.equals(event.getLoggerName()))
+            return Filter.NEUTRAL;
+        val ruleSet = config.getRuleSet();
+        val rules = ruleSet.getRules(severity(event.getLevel()), event.getLoggerName());
+        if (rules == null)
+            return Filter.NEUTRAL;
+        val startNanos = System.nanoTime();
+        val filterItem = match(rules, event);
+        boolean denied = false;
+        if (filterItem != null) {
+            filterItem.getHits().increment();
+            val suppressedCount = filterItem.getAction().allow();
+            if (suppressedCount == RuleAction.DENIED) {
+                deniedCount.increment();
+                denied = true;
+            } else if (suppressedCount > 0)
+                event.setProperty(SUPPRESSED_COUNT_PROPERTY, String.valueOf(suppressedCount));
         }
+        stats.recordDecision(startNanos, denied);
+        return denied ? Filter.DENY : Filter.NEUTRAL;
+    }
 
-        static boolean getBoolean(Map<String, Object> map, String key) {
-            val value = (Boolean) map.get(key);
-            return value != null && value;
-        }
+    /**
+     * @return the first filter item in config order matching the event or null if there is none
+     */
+    static FilterItem match(RuleSet ruleSet, LoggingEvent event) {
+        val rules = ruleSet.getRules(severity(event.getLevel()), event.getLoggerName());
+        return rules == null ? null : match(rules, event);
+    }
 
-        boolean matches(LoggingEvent event) {
-            boolean matches = false;
-            if (level.equals(event.getLevel())) {
-                matches = matches(event.getRenderedMessage());
-                if (!matches && checkStackTrace) {
-                    val throwableStrRep = event.getThrowableStrRep();
-                    if (throwableStrRep != null) {
-                        int i = 0;
-                        while (!matches && i < throwableStrRep.length) {
-                            matches = matches(throwableStrRep[i++]);
-                        }
-                    }
-                }
+    private static FilterItem match(RuleSet.Rules rules, LoggingEvent event) {
+        FilterItem match = rules.matchMessage(event.getRenderedMessage());
+        if (rules.isCheckStackTrace(match)) {
+            val throwableInformation = event.getThrowableInformation();
+            if (throwableInformation != null) {
+                val throwable = throwableInformation.getThrowable();
+                match = throwable == null ? rules.matchStackTrace(throwableInformation.getThrowableStrRep(), match)
+                        : rules.matchStackTrace(throwable, match);
             }
-            return matches;
         }
+        return match;
+    }
 
-        boolean matches(String s) {
-            return messagePattern == null ? s.contains(message) : messagePattern.matcher(s).matches();
+    private static Severity severity(Level level) {
+        switch (level.toInt()) {
+            case Level.OFF_INT: return Severity.OFF;
+            case Level.FATAL_INT: return Severity.FATAL;
+            case Level.ERROR_INT: return Severity.ERROR;
+            case Level.WARN_INT: return Severity.WARN;
+            case Level.INFO_INT: return Severity.INFO;
+            case Level.DEBUG_INT: return Severity.DEBUG;
+            case Level.TRACE_INT: return Severity.TRACE;
+            case Level.ALL_INT: return Severity.ALL;
+            default: return null;
         }
     }
 }
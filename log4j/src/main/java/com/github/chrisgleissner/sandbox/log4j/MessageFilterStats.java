@@ -0,0 +1,111 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+import org.apache.log4j.helpers.LogLog;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decision counts and latencies of a {@link MessageFilter}, as well as the hits of its filter items.
+ */
+final class MessageFilterStats implements MessageFilterStatsMXBean {
+    private static final String DOMAIN = MessageFilter.class.getPackage().getName();
+
+    private final LongAdder decideCount = new LongAdder();
+    private final LongAdder deniedCount = new LongAdder();
+    private final LatencyHistogram decideLatency = new LatencyHistogram();
+    private volatile FilterConfig config;
+    private ObjectName objectName;
+
+    void setConfig(FilterConfig config) {
+        this.config = config;
+    }
+
+    void recordDecision(long startNanos, boolean denied) {
+        decideLatency.record(System.nanoTime() - startNanos);
+        decideCount.increment();
+        if (denied)
+            deniedCount.increment();
+    }
+
+    /**
+     * Registers this instance with the platform MBean server, replacing any instance registered under the same name.
+     */
+    synchronized void register(String name) {
+        unregister();
+        try {
+            val server = ManagementFactory.getPlatformMBeanServer();
+            val objectName = new ObjectName(DOMAIN + ":type=MessageFilter,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (Exception e) {
+            LogLog.warn("Failed to register MBean for " + MessageFilter.class.getName() + " " + name, e);
+        }
+    }
+
+    synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LogLog.debug("Failed to unregister MBean " + objectName, e);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override public long getDecideCount() {
+        return decideCount.sum();
+    }
+
+    @Override public long getDeniedCount() {
+        return deniedCount.sum();
+    }
+
+    @Override public Map<String, Long> getFilterItemHits() {
+        val hits = new LinkedHashMap<String, Long>();
+        val config = this.config;
+        if (config != null) {
+            for (val filterItem : config.getRuleSet().getFilterItems())
+                hits.put(filterItem.toString(), filterItem.getHits().sum());
+        }
+        return hits;
+    }
+
+    @Override public long getDecideLatencyMaxNanos() {
+        return decideLatency.getMax();
+    }
+
+    @Override public long getDecideLatencyP50Nanos() {
+        return decideLatency.getPercentile(50);
+    }
+
+    @Override public long getDecideLatencyP99Nanos() {
+        return decideLatency.getPercentile(99);
+    }
+
+    @Override public long getDecideLatencyP999Nanos() {
+        return decideLatency.getPercentile(99.9);
+    }
+
+    @Override public long[] getDecideLatencyHistogram() {
+        return decideLatency.getCounts();
+    }
+
+    @Override public void reset() {
+        decideCount.reset();
+        deniedCount.reset();
+        decideLatency.reset();
+        val config = this.config;
+        if (config != null) {
+            for (val filterItem : config.getRuleSet().getFilterItems())
+                filterItem.getHits().reset();
+        }
+    }
+}
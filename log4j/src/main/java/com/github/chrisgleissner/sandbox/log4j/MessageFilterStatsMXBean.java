@@ -0,0 +1,43 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import java.util.Map;
+
+/**
+ * Statistics of a {@link MessageFilter}, registered as
+ * {@code com.github.chrisgleissner.sandbox.log4j:type=MessageFilter,name=<name>}.
+ */
+public interface MessageFilterStatsMXBean {
+
+    /**
+     * @return number of events matched against filter items; events of levels and loggers without filter items aren't
+     * counted nor timed
+     */
+    long getDecideCount();
+
+    long getDeniedCount();
+
+    /**
+     * @return number of events matched by each filter item of the current config, including filter items which never
+     * matched
+     */
+    Map<String, Long> getFilterItemHits();
+
+    long getDecideLatencyMaxNanos();
+
+    long getDecideLatencyP50Nanos();
+
+    long getDecideLatencyP99Nanos();
+
+    long getDecideLatencyP999Nanos();
+
+    /**
+     * @return number of decisions by latency bucket, where bucket {@code i > 0} holds latencies in
+     * {@code [2^i, 2^(i+1))} nanoseconds
+     */
+    long[] getDecideLatencyHistogram();
+
+    /**
+     * Resets the decision counts and latencies. Filter item hits are reset as well.
+     */
+    void reset();
+}
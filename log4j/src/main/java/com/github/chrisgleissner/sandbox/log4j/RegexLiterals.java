@@ -0,0 +1,144 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Extracts literal substrings which any string matched by a regex must contain, e.g. {@code filter} and {@code text}
+ * from {@code .*filter.*text}. Checking for these literals is much cheaper than running the regex and rejects most
+ * strings which can't match.
+ * <p>
+ * The extraction is conservative: groups, character classes, quantified characters and escape sequences other than
+ * escaped punctuation end a literal. Regexes with a top-level alternation, inline flags, which may e.g. make matching
+ * case-insensitive, or unsupported escape sequences yield no literals at all.
+ */
+final class RegexLiterals {
+    private static final String QUANTIFIERS = "*+?{";
+    private static final String META_CHARS = "\\^$.|?*+()[]{}";
+    /**
+     * Escape sequences which match a single character or a boundary and thus merely end a literal. Other escape
+     * sequences starting with a letter or digit, e.g. back references or {@code \Q}, aren't supported.
+     */
+    private static final String CHARACTER_CLASS_ESCAPES = "dDsSwWbBAGZzRhHvVXntrfea";
+
+    private RegexLiterals() {
+    }
+
+    /**
+     * @return the required literals, longest first, or an empty list if there are none
+     */
+    static List<String> of(String regex) {
+        val literals = new ArrayList<String>();
+        if (regex.contains("(?"))
+            return literals;
+        val literal = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            val c = regex.charAt(i);
+            if (c == '|')
+                return new ArrayList<>();
+            if (c == '(' || c == '[' || c == '{') {
+                addLiteral(literals, literal);
+                i = skipBlock(regex, i);
+                if (i < 0)
+                    return new ArrayList<>();
+            } else if (c == '\\' && i + 1 < regex.length()) {
+                val escaped = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    if (CHARACTER_CLASS_ESCAPES.indexOf(escaped) < 0)
+                        return new ArrayList<>();
+                    addLiteral(literals, literal);
+                    i += 2;
+                } else
+                    i = appendLiteral(regex, i + 2, escaped, literal, literals);
+            } else if (META_CHARS.indexOf(c) >= 0) {
+                addLiteral(literals, literal);
+                i++;
+            } else
+                i = appendLiteral(regex, i + 1, c, literal, literals);
+        }
+        addLiteral(literals, literal);
+        Collections.sort(literals, new Comparator<String>() {
+            @Override public int compare(String s1, String s2) {
+                return s2.length() - s1.length();
+            }
+        });
+        return literals;
+    }
+
+    /**
+     * Appends a literal character unless it is optional, i.e. followed by a quantifier other than {@code +}.
+     *
+     * @param i index after the character
+     * @return index of the character's quantifier or of the next character
+     */
+    private static int appendLiteral(String regex, int i, char c, StringBuilder literal, List<String> literals) {
+        if (i < regex.length() && QUANTIFIERS.indexOf(regex.charAt(i)) >= 0) {
+            if (regex.charAt(i) == '+')
+                literal.append(c);
+            addLiteral(literals, literal);
+        } else
+            literal.append(c);
+        return i;
+    }
+
+    private static void addLiteral(List<String> literals, StringBuilder literal) {
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * @return the index after the group, character class or quantifier range starting at the specified index or -1
+     * if it is unbalanced
+     */
+    private static int skipBlock(String regex, int start) {
+        if (regex.charAt(start) == '{') {
+            val end = regex.indexOf('}', start);
+            return end < 0 ? -1 : end + 1;
+        }
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            val c = regex.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+                if (i < 0 || depth == 0)
+                    return i < 0 ? -1 : i + 1;
+            } else if (c == '(')
+                depth++;
+            else if (c == ')' && --depth == 0)
+                return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the bracket closing the possibly nested character class starting at the specified index or
+     * -1 if there is none
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^')
+            i++;
+        if (i < regex.length() && regex.charAt(i) == ']')
+            i++;
+        int depth = 1;
+        for (; i < regex.length(); i++) {
+            val c = regex.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '[')
+                depth++;
+            else if (c == ']' && --depth == 0)
+                return i;
+        }
+        return -1;
+    }
+}
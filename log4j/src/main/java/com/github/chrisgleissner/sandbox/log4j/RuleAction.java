@@ -0,0 +1,186 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.val;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * What happens to an event matched by a filter item. Configured by the YAML key {@code action}:
+ * <ul>
+ * <li>{@code deny} (default): denies all events.</li>
+ * <li>{@code limit}: allows the first {@code limit} events per {@code window}, then denies until the window ends.</li>
+ * <li>{@code sample}: allows one in {@code every} events.</li>
+ * <li>{@code summarize}: allows the first event per {@code window} and denies the others. Once a window in which
+ * events were denied ends, a summary event reports their number, see {@link Summaries}.</li>
+ * </ul>
+ * A {@code window} is a number of seconds or a number followed by {@code ms}, {@code s}, {@code m} or {@code h}; it
+ * defaults to one minute. Actions other than {@code deny} keep their state in lock-free counters. {@code limit} and
+ * {@code sample} report how many events they suppressed since they last allowed one, so that the allowed event can
+ * carry this count.
+ */
+abstract class RuleAction {
+    static final long DENIED = -1;
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*(ms|s|m|h)?");
+    private static final long DEFAULT_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    static final RuleAction DENY = new RuleAction() {
+        @Override long allow() {
+            return DENIED;
+        }
+
+        @Override public String toString() {
+            return "deny";
+        }
+    };
+
+    static RuleAction of(Map<String, Object> yamlFilterItem) {
+        val action = (String) yamlFilterItem.get("action");
+        switch (action == null ? "deny" : action.trim().toLowerCase()) {
+            case "deny":
+                return DENY;
+            case "limit":
+                return new Limit(getPositiveInt(yamlFilterItem, "limit"), getWindowNanos(yamlFilterItem));
+            case "sample":
+                return new Sample(getPositiveInt(yamlFilterItem, "every"));
+            case "summarize":
+                return new Summarize(getWindowNanos(yamlFilterItem));
+            default:
+                throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+
+    /**
+     * @return {@link #DENIED} if the event is to be denied, otherwise the number of events suppressed since the last
+     * allowed event
+     */
+    abstract long allow();
+
+    private static int getPositiveInt(Map<String, Object> map, String key) {
+        val value = map.get(key);
+        if (!(value instanceof Integer) || (Integer) value < 1)
+            throw new IllegalArgumentException("Expected positive integer for " + key + " but got " + value);
+        return (Integer) value;
+    }
+
+    static long getWindowNanos(Map<String, Object> map) {
+        val value = map.get("window");
+        if (value == null)
+            return DEFAULT_WINDOW_NANOS;
+        val matcher = DURATION.matcher(value.toString().trim());
+        if (!matcher.matches() || Long.parseLong(matcher.group(1)) == 0)
+            throw new IllegalArgumentException("Invalid window: " + value);
+        val amount = Long.parseLong(matcher.group(1));
+        val unit = matcher.group(2) == null ? "s" : matcher.group(2);
+        switch (unit) {
+            case "ms":
+                return TimeUnit.MILLISECONDS.toNanos(amount);
+            case "m":
+                return TimeUnit.MINUTES.toNanos(amount);
+            case "h":
+                return TimeUnit.HOURS.toNanos(amount);
+            default:
+                return TimeUnit.SECONDS.toNanos(amount);
+        }
+    }
+
+    /**
+     * Fixed window rate limit. The index of the current window and the number of events allowed within it are packed
+     * into one {@link AtomicLong}, so that both are updated by a single compare-and-set.
+     */
+    @ToString(callSuper = false)
+    @EqualsAndHashCode(callSuper = false)
+    static final class Limit extends RuleAction {
+        private static final long ORIGIN_NANOS = System.nanoTime();
+        private final int limit;
+        private final long windowNanos;
+        @ToString.Exclude @EqualsAndHashCode.Exclude private final AtomicLong state = new AtomicLong(-1L << 32);
+        @ToString.Exclude @EqualsAndHashCode.Exclude private final AtomicLong suppressed = new AtomicLong();
+
+        Limit(int limit, long windowNanos) {
+            this.limit = limit;
+            this.windowNanos = windowNanos;
+        }
+
+        @Override long allow() {
+            val window = (int) ((System.nanoTime() - ORIGIN_NANOS) / windowNanos);
+            while (true) {
+                val currentState = state.get();
+                val currentWindow = (int) (currentState >>> 32);
+                val allowed = (int) currentState;
+                long newState;
+                if (currentWindow != window)
+                    newState = ((long) window << 32) | 1;
+                else if (allowed < limit)
+                    newState = currentState + 1;
+                else {
+                    suppressed.incrementAndGet();
+                    return DENIED;
+                }
+                if (state.compareAndSet(currentState, newState))
+                    return suppressed.getAndSet(0);
+            }
+        }
+    }
+
+    @ToString(callSuper = false)
+    @EqualsAndHashCode(callSuper = false)
+    static final class Sample extends RuleAction {
+        private final int every;
+        @ToString.Exclude @EqualsAndHashCode.Exclude private final AtomicLong count = new AtomicLong();
+        @ToString.Exclude @EqualsAndHashCode.Exclude private final AtomicLong suppressed = new AtomicLong();
+
+        Sample(int every) {
+            this.every = every;
+        }
+
+        @Override long allow() {
+            if (count.getAndIncrement() % every == 0)
+                return suppressed.getAndSet(0);
+            suppressed.incrementAndGet();
+            return DENIED;
+        }
+    }
+
+    /**
+     * Allows the first event per window. The window is advanced by {@link #summarize(long)}, which is only called by
+     * the thread of {@link Summaries}.
+     */
+    @ToString(callSuper = false)
+    @EqualsAndHashCode(callSuper = false)
+    static final class Summarize extends RuleAction {
+        private final long windowNanos;
+        @ToString.Exclude @EqualsAndHashCode.Exclude private final AtomicBoolean allowedInWindow = new AtomicBoolean();
+        @ToString.Exclude @EqualsAndHashCode.Exclude private final AtomicLong suppressed = new AtomicLong();
+        @ToString.Exclude @EqualsAndHashCode.Exclude private volatile long windowStartNanos = System.nanoTime();
+
+        Summarize(long windowNanos) {
+            this.windowNanos = windowNanos;
+        }
+
+        @Override long allow() {
+            if (!allowedInWindow.get() && allowedInWindow.compareAndSet(false, true))
+                return 0;
+            suppressed.incrementAndGet();
+            return DENIED;
+        }
+
+        /**
+         * Starts a new window if the current one has ended.
+         *
+         * @return the number of events suppressed in the ended window; 0 if it hasn't ended
+         */
+        long summarize(long nowNanos) {
+            if (nowNanos - windowStartNanos < windowNanos)
+                return 0;
+            windowStartNanos = nowNanos;
+            allowedInWindow.set(false);
+            return suppressed.getAndSet(0);
+        }
+    }
+}
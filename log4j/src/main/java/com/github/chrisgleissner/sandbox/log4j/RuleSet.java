@@ -0,0 +1,221 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable set of filter items, compiled for fast lookup. Filter items are indexed by level in an array and by logger
+ * category in a {@link CategoryTrie}, so an event only touches the filter items which can apply to it. The rules
+ * stored for a category include those of its parent categories, so at most one set of rules is evaluated per event.
+ * <p>
+ * Within such a set, all literal messages are combined into one {@link LiteralMatcher}, so the rendered message and
+ * each stack trace line are scanned only once no matter how many literal filter items exist. Regex filter items are
+ * evaluated one by one. An optional {@link DecisionCache} memoizes the match per message template.
+ */
+final class RuleSet {
+    private static final Severity[] LEVELS = Severity.values();
+
+    private final List<FilterItem> filterItems;
+    @SuppressWarnings("unchecked")
+    private final List<FilterItem>[] filterItemsByLevel = new List[LEVELS.length];
+    @SuppressWarnings("unchecked")
+    private final CategoryTrie<Rules>[] rulesByLevel = new CategoryTrie[LEVELS.length];
+    private final DecisionCache decisionCache;
+
+    /**
+     * @param previous rule set whose compiled rules are reused for levels with unchanged filter items; may be null
+     * @param decisionCacheSize number of message templates whose match is cached; 0 disables the cache
+     */
+    RuleSet(List<FilterItem> filterItems, RuleSet previous, int decisionCacheSize) {
+        this.decisionCache = decisionCacheSize > 0 ? new DecisionCache(decisionCacheSize) : null;
+        this.filterItems = Collections.unmodifiableList(new ArrayList<>(filterItems));
+        for (int levelIndex = 0; levelIndex < LEVELS.length; levelIndex++) {
+            val levelFilterItems = new ArrayList<FilterItem>();
+            val categories = new LinkedHashSet<String>();
+            for (val filterItem : filterItems) {
+                if (filterItem.getLevel() == LEVELS[levelIndex]) {
+                    levelFilterItems.add(filterItem);
+                    categories.add(filterItem.getLogger());
+                }
+            }
+            filterItemsByLevel[levelIndex] = levelFilterItems;
+            if (previous != null && levelFilterItems.equals(previous.filterItemsByLevel[levelIndex]))
+                rulesByLevel[levelIndex] = previous.rulesByLevel[levelIndex];
+            else if (!levelFilterItems.isEmpty())
+                rulesByLevel[levelIndex] = compile(levelFilterItems, categories);
+        }
+    }
+
+    private static CategoryTrie<Rules> compile(List<FilterItem> filterItems, Set<String> categories) {
+        val trie = new CategoryTrie<Rules>();
+        for (val category : categories) {
+            val categoryFilterItems = new ArrayList<FilterItem>();
+            for (val filterItem : filterItems) {
+                if (CategoryTrie.appliesTo(filterItem.getLogger(), category))
+                    categoryFilterItems.add(filterItem);
+            }
+            trie.put(category, new Rules(categoryFilterItems));
+        }
+        return trie;
+    }
+
+    List<FilterItem> getFilterItems() {
+        return filterItems;
+    }
+
+    /**
+     * @return the rules applying to events of the specified level and logger or null if there are none
+     */
+    Rules getRules(Severity level, String loggerName) {
+        if (level == null)
+            return null;
+        val rules = rulesByLevel[level.ordinal()];
+        return rules == null ? null : rules.find(loggerName);
+    }
+
+    /**
+     * @param template format of a message with {@code {}} placeholders for its parameters, or null if unknown
+     * @return the cached decision for all messages of the template and rules or null if there is none
+     */
+    DecisionCache.Decision getDecision(Rules rules, String template) {
+        return decisionCache == null || template == null ? null : decisionCache.get(rules, template);
+    }
+
+    /**
+     * Compiled filter items applying to a certain level and logger category. If several filter items match an event,
+     * the first one in config order wins, no matter whether it matched the message or the stack trace, or where in
+     * the message it matched.
+     */
+    static final class Rules implements StackTraceScanner.LineMatcher {
+        private static final int MAX_CACHED_THROWABLES = 1024;
+        private static final Object NO_MATCH = new Object();
+
+        private final Map<FilterItem, Integer> priorities = new IdentityHashMap<>();
+        private final LiteralMatcher messageLiterals;
+        private final LiteralMatcher stackTraceLiterals;
+        private final List<FilterItem> messageRegexes = new ArrayList<>();
+        private final List<FilterItem> stackTraceRegexes = new ArrayList<>();
+        private final int firstStackTracePriority;
+        private final ConcurrentMap<ThrowableKey, Object> matchesByThrowable = new ConcurrentHashMap<>();
+
+        Rules(List<FilterItem> filterItems) {
+            val messageLiteralItems = new ArrayList<FilterItem>();
+            val stackTraceLiteralItems = new ArrayList<FilterItem>();
+            int firstStackTracePriority = Integer.MAX_VALUE;
+            for (val filterItem : filterItems) {
+                priorities.putIfAbsent(filterItem, priorities.size());
+                if (filterItem.isCheckStackTrace())
+                    firstStackTracePriority = Math.min(firstStackTracePriority, priorities.get(filterItem));
+                if (filterItem.isRegex()) {
+                    messageRegexes.add(filterItem);
+                    if (filterItem.isCheckStackTrace())
+                        stackTraceRegexes.add(filterItem);
+                } else {
+                    messageLiteralItems.add(filterItem);
+                    if (filterItem.isCheckStackTrace())
+                        stackTraceLiteralItems.add(filterItem);
+                }
+            }
+            this.messageLiterals = new LiteralMatcher(messageLiteralItems);
+            this.stackTraceLiterals = new LiteralMatcher(stackTraceLiteralItems);
+            this.firstStackTracePriority = firstStackTracePriority;
+        }
+
+        /**
+         * @return the first filter item matching the message or null if there is none
+         */
+        FilterItem matchMessage(CharSequence message) {
+            return match(message, null, messageLiterals, messageRegexes);
+        }
+
+        /**
+         * @return the first literal filter item found in the specified range of the message or null if there is none
+         */
+        FilterItem matchMessageLiterals(CharSequence message, int from, int to) {
+            return messageLiterals.find(message, from, to);
+        }
+
+        /**
+         * @return whether no other filter item precedes the specified one, so that it matches any event it is found in
+         */
+        boolean isFirst(FilterItem filterItem) {
+            return priorities.get(filterItem) == 0;
+        }
+
+        /**
+         * @param match the filter item matched by the message or null if there is none
+         * @return whether a filter item which checks stack traces precedes the match
+         */
+        boolean isCheckStackTrace(FilterItem match) {
+            return match == null ? firstStackTracePriority != Integer.MAX_VALUE
+                    : firstStackTracePriority < priorities.get(match);
+        }
+
+        /**
+         * Matches the stack trace of a throwable frame by frame. The match of the stack trace is cached per
+         * {@link ThrowableKey}, unless the throwable has none.
+         *
+         * @param match the filter item matched by the message or null if there is none
+         * @return the first of the match and the filter item matched by the stack trace
+         */
+        FilterItem matchStackTrace(Throwable throwable, FilterItem match) {
+            val key = ThrowableKey.of(throwable);
+            if (key == null)
+                return first(match, StackTraceScanner.scan(throwable, this));
+            val cachedMatch = matchesByThrowable.get(key);
+            if (cachedMatch != null)
+                return first(match, cachedMatch == NO_MATCH ? null : (FilterItem) cachedMatch);
+            val stackTraceMatch = StackTraceScanner.scan(throwable, this);
+            if (matchesByThrowable.size() >= MAX_CACHED_THROWABLES)
+                matchesByThrowable.clear();
+            matchesByThrowable.put(key, stackTraceMatch == null ? NO_MATCH : stackTraceMatch);
+            return first(match, stackTraceMatch);
+        }
+
+        /**
+         * Matches an already rendered stack trace, e.g. of an event which was deserialized without its throwable.
+         *
+         * @param match the filter item matched by the message or null if there is none
+         * @return the first of the match and the filter item matched by the stack trace
+         */
+        FilterItem matchStackTrace(String[] throwableStrRep, FilterItem match) {
+            for (int i = 0; !isFinal(match) && throwableStrRep != null && i < throwableStrRep.length; i++)
+                match = match(throwableStrRep[i], match);
+            return match;
+        }
+
+        @Override public FilterItem match(CharSequence stackTraceLine, FilterItem match) {
+            return match(stackTraceLine, match, stackTraceLiterals, stackTraceRegexes);
+        }
+
+        @Override public boolean isFinal(FilterItem match) {
+            return match != null && !isCheckStackTrace(match);
+        }
+
+        private FilterItem match(CharSequence s, FilterItem match, LiteralMatcher literals, List<FilterItem> regexes) {
+            if (s == null)
+                return match;
+            match = first(match, literals.find(s));
+            for (val regex : regexes) {
+                if (match != null && priorities.get(regex) >= priorities.get(match))
+                    break;
+                if (regex.matches(s))
+                    return regex;
+            }
+            return match;
+        }
+
+        private FilterItem first(FilterItem a, FilterItem b) {
+            return a == null || b != null && priorities.get(b) < priorities.get(a) ? b : a;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+/**
+ * Level of a filter item, independent of the logging framework. Ordered from most to least severe.
+ */
+enum Severity {
+    OFF, FATAL, ERROR, WARN, INFO, DEBUG, TRACE, ALL;
+
+    /**
+     * @return the severity with the specified case-insensitive name or {@link #DEBUG} if there is none, in line with
+     * {@code org.apache.log4j.Level.toLevel(String)}
+     */
+    static Severity parse(String name) {
+        if (name != null) {
+            for (Severity severity : values()) {
+                if (severity.name().equalsIgnoreCase(name.trim()))
+                    return severity;
+            }
+        }
+        return DEBUG;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Matches the lines of a stack trace one by one, as they would be printed by {@link Throwable#printStackTrace()},
+ * without rendering the whole stack trace. Each line is rendered into a reused per-thread buffer and scanning stops
+ * once no later line can yield a filter item preceding the one matched so far.
+ * <p>
+ * Stack trace elements are rendered as {@code class.method(file:line)}, without the class loader and module names
+ * which Java 9+ prepends to frames of named modules.
+ */
+final class StackTraceScanner {
+    private static final ThreadLocal<StringBuilder> lineBuffer = new ThreadLocal<StringBuilder>() {
+        @Override protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    interface LineMatcher {
+        /**
+         * @param match the filter item matched by previous lines or null if there is none
+         * @return the first of the match and the filter item matching the line
+         */
+        FilterItem match(CharSequence line, FilterItem match);
+
+        /**
+         * @return whether no filter item can precede the match, so that the remaining lines needn't be matched
+         */
+        boolean isFinal(FilterItem match);
+    }
+
+    private StackTraceScanner() {
+    }
+
+    /**
+     * @return the first filter item matching any line of the stack trace or null if there is none
+     */
+    static FilterItem scan(Throwable throwable, LineMatcher matcher) {
+        val line = lineBuffer.get();
+        FilterItem match = matchHeader(line, "", "", throwable, null, matcher);
+        val trace = throwable.getStackTrace();
+        for (int i = 0; !matcher.isFinal(match) && i < trace.length; i++)
+            match = matcher.match(frame(line, "", trace[i]), match);
+        if (!matcher.isFinal(match) && (throwable.getCause() != null || throwable.getSuppressed().length > 0)) {
+            Set<Throwable> dejaVu = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+            dejaVu.add(throwable);
+            match = scanEnclosed(line, throwable, trace, "", dejaVu, match, matcher);
+        }
+        return match;
+    }
+
+    private static FilterItem scanEnclosed(StringBuilder line, Throwable throwable, StackTraceElement[] trace,
+                                           String prefix, Set<Throwable> dejaVu, FilterItem match,
+                                           LineMatcher matcher) {
+        val suppressed = throwable.getSuppressed();
+        for (int i = 0; !matcher.isFinal(match) && i < suppressed.length; i++)
+            match = scan(line, suppressed[i], trace, "Suppressed: ", prefix + "\t", dejaVu, match, matcher);
+        if (!matcher.isFinal(match) && throwable.getCause() != null)
+            match = scan(line, throwable.getCause(), trace, "Caused by: ", prefix, dejaVu, match, matcher);
+        return match;
+    }
+
+    private static FilterItem scan(StringBuilder line, Throwable throwable, StackTraceElement[] enclosingTrace,
+                                   String caption, String prefix, Set<Throwable> dejaVu, FilterItem match,
+                                   LineMatcher matcher) {
+        if (!dejaVu.add(throwable)) {
+            line.setLength(0);
+            return matcher.match(line.append(prefix).append(caption).append("[CIRCULAR REFERENCE: ")
+                    .append(throwable).append(']'), match);
+        }
+        match = matchHeader(line, prefix, caption, throwable, match, matcher);
+        val trace = throwable.getStackTrace();
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        for (int i = 0; !matcher.isFinal(match) && i <= m; i++)
+            match = matcher.match(frame(line, prefix, trace[i]), match);
+        val framesInCommon = trace.length - 1 - m;
+        if (!matcher.isFinal(match) && framesInCommon != 0) {
+            line.setLength(0);
+            match = matcher.match(line.append(prefix).append("\t... ").append(framesInCommon).append(" more"), match);
+        }
+        return matcher.isFinal(match) ? match : scanEnclosed(line, throwable, trace, prefix, dejaVu, match, matcher);
+    }
+
+    /**
+     * Matches the header of a throwable, i.e. its string representation, line by line.
+     */
+    private static FilterItem matchHeader(StringBuilder line, String prefix, String caption, Throwable throwable,
+                                          FilterItem match, LineMatcher matcher) {
+        val header = throwable.toString();
+        int start = 0;
+        while (!matcher.isFinal(match) && start <= header.length()) {
+            int end = header.indexOf('\n', start);
+            if (end < 0)
+                end = header.length();
+            line.setLength(0);
+            if (start == 0)
+                line.append(prefix).append(caption);
+            line.append(header, start, end > start && header.charAt(end - 1) == '\r' ? end - 1 : end);
+            match = matcher.match(line, match);
+            start = end + 1;
+        }
+        return match;
+    }
+
+    private static StringBuilder frame(StringBuilder line, String prefix, StackTraceElement element) {
+        line.setLength(0);
+        line.append(prefix).append("\tat ").append(element.getClassName()).append('.').append(element.getMethodName());
+        if (element.isNativeMethod())
+            line.append("(Native Method)");
+        else if (element.getFileName() == null)
+            line.append("(Unknown Source)");
+        else {
+            line.append('(').append(element.getFileName());
+            if (element.getLineNumber() >= 0)
+                line.append(':').append(element.getLineNumber());
+            line.append(')');
+        }
+        return line;
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.val;
+import org.apache.log4j.helpers.LogLog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports the events suppressed by {@link RuleAction.Summarize} filter items once per window, including the last
+ * window of a flood. All filters share a single daemon thread which checks the filter items of their current configs
+ * every second, so windows shorter than a second end on the next check.
+ */
+final class Summaries implements Runnable {
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+    private static Summaries instance;
+
+    private final Map<FilterConfig, Sink> sinksByConfig = new ConcurrentHashMap<>();
+
+    interface Sink {
+        /**
+         * Called on the thread of {@link Summaries}. Summary events must bypass the filter, since they may contain
+         * the filter item's message.
+         */
+        void summarize(FilterItem filterItem, long suppressedCount);
+    }
+
+    private Summaries() {
+    }
+
+    static synchronized Summaries getInstance() {
+        if (instance == null) {
+            instance = new Summaries();
+            val thread = new Thread(instance, Summaries.class.getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    static String message(FilterItem filterItem, long suppressedCount) {
+        return "Suppressed " + suppressedCount + " events matching " + filterItem;
+    }
+
+    void register(FilterConfig config, Sink sink) {
+        sinksByConfig.put(config, sink);
+    }
+
+    void unregister(FilterConfig config) {
+        sinksByConfig.remove(config);
+    }
+
+    @Override public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(CHECK_INTERVAL_MILLIS);
+                summarize(System.nanoTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                LogLog.warn("Failed to summarize events suppressed by " + MessageFilter.class.getName(), e);
+            }
+        }
+    }
+
+    void summarize(long nowNanos) {
+        for (val entry : sinksByConfig.entrySet()) {
+            for (val filterItem : entry.getKey().getRuleSet().getFilterItems()) {
+                if (filterItem.getAction() instanceof RuleAction.Summarize) {
+                    val suppressedCount = ((RuleAction.Summarize) filterItem.getAction()).summarize(nowNanos);
+                    if (suppressedCount > 0)
+                        entry.getValue().summarize(filterItem, suppressedCount);
+                }
+            }
+        }
+    }
+}
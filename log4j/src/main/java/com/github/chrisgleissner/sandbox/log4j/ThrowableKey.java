@@ -0,0 +1,50 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Identifies a throwable by everything its stack trace is rendered from, i.e. the header and all stack frames of the
+ * throwable, of its suppressed throwables and of its causes. Throwables with equal keys have equal stack traces.
+ */
+@Value
+class ThrowableKey {
+    private static final int MAX_THROWABLES = 16;
+
+    String header;
+    List<StackTraceElement> trace;
+    List<ThrowableKey> suppressed;
+    ThrowableKey cause;
+
+    /**
+     * @return the key of the throwable, or null if it encloses a circular reference or more than
+     * {@value #MAX_THROWABLES} throwables, so that its stack trace isn't worth caching
+     */
+    static ThrowableKey of(Throwable throwable) {
+        return of(throwable, Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()));
+    }
+
+    private static ThrowableKey of(Throwable throwable, Set<Throwable> dejaVu) {
+        if (dejaVu.size() == MAX_THROWABLES || !dejaVu.add(throwable))
+            return null;
+        Throwable[] suppressedThrowables = throwable.getSuppressed();
+        List<ThrowableKey> suppressed = new ArrayList<>(suppressedThrowables.length);
+        for (Throwable suppressedThrowable : suppressedThrowables) {
+            ThrowableKey key = of(suppressedThrowable, dejaVu);
+            if (key == null)
+                return null;
+            suppressed.add(key);
+        }
+        ThrowableKey cause = null;
+        if (throwable.getCause() != null && (cause = of(throwable.getCause(), dejaVu)) == null)
+            return null;
+        return new ThrowableKey(throwable.toString(), asList(throwable.getStackTrace()), suppressed, cause);
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CategoryTrieTest {
+
+    @Test
+    public void findsMostSpecificCategory() {
+        CategoryTrie<String> trie = new CategoryTrie<>();
+        trie.put("com.foo", "foo");
+        trie.put("com.foo.bar.Baz", "baz");
+        assertNull(trie.find("com"));
+        assertNull(trie.find("com.fo"));
+        assertNull(trie.find("com.foobar"));
+        assertEquals("foo", trie.find("com.foo"));
+        assertEquals("foo", trie.find("com.foo.bar"));
+        assertEquals("foo", trie.find("com.foo.bar.Bazz"));
+        assertEquals("baz", trie.find("com.foo.bar.Baz"));
+        assertEquals("baz", trie.find("com.foo.bar.Baz.Inner"));
+    }
+
+    @Test
+    public void rootCategoryAppliesToAllLoggers() {
+        CategoryTrie<String> trie = new CategoryTrie<>();
+        trie.put("", "root");
+        trie.put("com.foo", "foo");
+        assertEquals("root", trie.find("org.bar"));
+        assertEquals("root", trie.find(""));
+        assertEquals("root", trie.find(null));
+        assertEquals("foo", trie.find("com.foo.Bar"));
+    }
+
+    @Test
+    public void appliesTo() {
+        assertTrue(CategoryTrie.appliesTo("", "com.foo"));
+        assertTrue(CategoryTrie.appliesTo("com.foo", "com.foo"));
+        assertTrue(CategoryTrie.appliesTo("com.foo", "com.foo.Bar"));
+        assertFalse(CategoryTrie.appliesTo("com.foo", "com.foobar"));
+        assertFalse(CategoryTrie.appliesTo("com.foo.Bar", "com.foo"));
+    }
+}
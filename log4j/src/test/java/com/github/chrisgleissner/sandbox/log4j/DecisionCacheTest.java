@@ -0,0 +1,69 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.chrisgleissner.sandbox.log4j.LiteralMatcherTest.items;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DecisionCacheTest {
+    private final List<FilterItem> items = items("filter", "other");
+    private final RuleSet.Rules rules = new RuleSet.Rules(items);
+    private final DecisionCache cache = new DecisionCache(16);
+
+    @Test
+    public void templateWithoutParametersDeterminesMatch() {
+        assertSame(items.get(0), determinedMatch("message to filter"));
+        assertNull(determinedMatch("message to keep"));
+    }
+
+    @Test
+    public void templateDeterminesMatchIfConstantTextMatchesFirstItem() {
+        assertSame(items.get(0), determinedMatch("{} filter {}"));
+        assertSame(items.get(0), determinedMatch("{}filter"));
+    }
+
+    @Test
+    public void templateDoesNotDetermineMatchIfParametersMayMatchPrecedingItem() {
+        assertFalse(cache.get(rules, "{} other {}").isDetermined());
+        assertFalse(cache.get(rules, "other {}").isDetermined());
+    }
+
+    @Test
+    public void templateDoesNotDetermineMatchIfParametersMayMatch() {
+        assertFalse(cache.get(rules, "message to {}").isDetermined());
+        assertFalse(cache.get(rules, "fil{}ter").isDetermined());
+        assertFalse(cache.get(rules, "escaped \\{} filter").isDetermined());
+    }
+
+    @Test
+    public void templateDoesNotDetermineMatchOfRegexInConstantText() {
+        Map<String, Object> yaml = new HashMap<>();
+        yaml.put("message", "^filter$");
+        yaml.put("regex", true);
+        RuleSet.Rules regexRules = new RuleSet.Rules(Arrays.asList(new FilterItem(yaml)));
+        assertFalse(cache.get(regexRules, "filter {}").isDetermined());
+        assertTrue(cache.get(regexRules, "filter").isDetermined());
+    }
+
+    @Test
+    public void cachesDecisionPerTemplateAndRules() {
+        DecisionCache.Decision decision = cache.get(rules, "message to filter");
+        assertSame(decision, cache.get(rules, new String("message to filter")));
+        RuleSet.Rules otherRules = new RuleSet.Rules(items("keep"));
+        assertNull(cache.get(otherRules, "message to filter").getMatch());
+    }
+
+    private FilterItem determinedMatch(String template) {
+        DecisionCache.Decision decision = cache.get(rules, template);
+        assertTrue(decision.isDetermined());
+        return decision.getMatch();
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FilterConfigTest {
+    private static final long RELOAD_TIMEOUT_MILLIS = 30000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reloadsChangedFileOnly() throws Exception {
+        File file1 = write(folder.newFile("filter1.yaml"), "- message: foo\n  level: info\n");
+        File file2 = write(folder.newFile("filter2.yaml"), "- message: bar\n  level: info\n");
+        FilterConfig config = new FilterConfig(file1 + "," + file2, FilterConfig.ReloadMode.NONE);
+        RuleSet ruleSet = config.getRuleSet();
+        FilterItem foo = MessageFilter.match(ruleSet, event("foo"));
+        assertNotNull(foo);
+        assertNull(MessageFilter.match(ruleSet, event("baz")));
+
+        write(file2, "- message: bar\n  level: info\n- message: baz\n  level: info\n");
+        config.reload(file2);
+        assertNotSame(ruleSet, config.getRuleSet());
+        assertSame(foo, MessageFilter.match(config.getRuleSet(), event("foo")));
+        assertNotNull(MessageFilter.match(config.getRuleSet(), event("baz")));
+        assertNull(MessageFilter.match(ruleSet, event("baz")));
+
+        ruleSet = config.getRuleSet();
+        config.reload(file1);
+        assertSame(ruleSet, config.getRuleSet());
+    }
+
+    @Test
+    public void keepsFilterItemsOfUnreadableFile() throws Exception {
+        File file = write(folder.newFile("filter.yaml"), "- message: foo\n  level: info\n");
+        FilterConfig config = new FilterConfig(file.getPath(), FilterConfig.ReloadMode.NONE);
+        write(file, "- message: [foo\n");
+        config.reload(file);
+        assertNotNull(MessageFilter.match(config.getRuleSet(), event("foo")));
+    }
+
+    @Test
+    public void reloadsWatchedFile() throws Exception {
+        assertReloads(FilterConfig.ReloadMode.WATCH);
+    }
+
+    @Test
+    public void reloadsPolledFile() throws Exception {
+        assertReloads(FilterConfig.ReloadMode.POLL);
+    }
+
+    @Test
+    public void stopsWatchingDirectoryOnceLastConfigIsClosed() throws Exception {
+        File file1 = write(folder.newFile("filter1.yaml"), "- message: foo\n  level: info\n");
+        File file2 = write(folder.newFile("filter2.yaml"), "- message: bar\n  level: info\n");
+        FilterConfig config1 = new FilterConfig(file1.getPath(), FilterConfig.ReloadMode.WATCH);
+        FilterConfig config2 = new FilterConfig(file2.getPath(), FilterConfig.ReloadMode.WATCH);
+        assertTrue(ConfigWatcher.getInstance().isWatched(folder.getRoot()));
+        config1.close();
+        assertTrue(ConfigWatcher.getInstance().isWatched(folder.getRoot()));
+        config2.close();
+        assertFalse(ConfigWatcher.getInstance().isWatched(folder.getRoot()));
+    }
+
+    private void assertReloads(FilterConfig.ReloadMode reloadMode) throws Exception {
+        File file = write(folder.newFile(), "- message: foo\n  level: info\n");
+        FilterConfig config = new FilterConfig(file.getPath(), reloadMode);
+        assertNull(MessageFilter.match(config.getRuleSet(), event("bar")));
+
+        // Changes the size, since polling compares it and a modification time of coarse granularity
+        write(file, "- message: bar\n  level: info\n- message: baz\n  level: info\n");
+        long timeout = System.currentTimeMillis() + RELOAD_TIMEOUT_MILLIS;
+        while (MessageFilter.match(config.getRuleSet(), event("bar")) == null && System.currentTimeMillis() < timeout)
+            Thread.sleep(10);
+        assertNotNull(MessageFilter.match(config.getRuleSet(), event("bar")));
+        assertNull(MessageFilter.match(config.getRuleSet(), event("foo")));
+        config.close();
+    }
+
+    private static File write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static LoggingEvent event(String message) {
+        return new LoggingEvent(FilterConfigTest.class.getName(), Logger.getLogger(FilterConfigTest.class), Level.INFO,
+                message, null);
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilteringAsyncAppenderTest {
+    private final Logger log = Logger.getLogger(FilteringAsyncAppenderTest.class.getName() + ".async");
+    private final CountDownLatch appenderReleased = new CountDownLatch(1);
+    private final CountDownLatch appenderBlocked = new CountDownLatch(1);
+    private final BlockingAppender appender = new BlockingAppender();
+    private FilteringAsyncAppender asyncAppender;
+
+    @Before
+    public void setUp() {
+        MessageFilter filter = new MessageFilter();
+        filter.setName("async");
+        filter.setConfigPaths("src/test/resources/log4j-regex-filter.yaml");
+        filter.setReload("none");
+        filter.activateOptions();
+
+        asyncAppender = new FilteringAsyncAppender();
+        asyncAppender.setBufferSize(1);
+        asyncAppender.addFilter(filter);
+        asyncAppender.addAppender(appender);
+        log.setAdditivity(false);
+        log.addAppender(asyncAppender);
+    }
+
+    @After
+    public void tearDown() {
+        appenderReleased.countDown();
+        log.removeAppender(asyncAppender);
+        asyncAppender.close();
+    }
+
+    @Test
+    public void deniedEventsDoNotBlockWhenBufferIsFull() throws Exception {
+        log.warn("first");
+        assertTrue(appenderBlocked.await(5, TimeUnit.SECONDS));
+        log.warn("second");
+
+        for (int i = 0; i < 1000; i++)
+            log.warn("filter " + i);
+
+        appenderReleased.countDown();
+        asyncAppender.close();
+        assertEquals(asList("first", "second"), appender.messages);
+    }
+
+    @Test
+    public void discardsAllowedEventsWhenBufferIsFullAndNotBlocking() throws Exception {
+        asyncAppender.setBlocking(false);
+        log.warn("first");
+        assertTrue(appenderBlocked.await(5, TimeUnit.SECONDS));
+        log.warn("second");
+
+        log.warn("third");
+        for (int i = 0; i < 1000; i++)
+            log.warn("filter " + i);
+        log.warn("fourth");
+
+        appenderReleased.countDown();
+        asyncAppender.close();
+        assertEquals(asList("first", "second", "Discarded 2 messages due to full event buffer including: third"),
+                appender.messages);
+    }
+
+    @Test
+    public void doesNotAppendOnceClosed() {
+        appenderReleased.countDown();
+        asyncAppender.close();
+        log.warn("first");
+        assertEquals(asList(), appender.messages);
+    }
+
+    private class BlockingAppender extends AppenderSkeleton {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        @Override protected void append(LoggingEvent event) {
+            messages.add(event.getRenderedMessage());
+            appenderBlocked.countDown();
+            try {
+                appenderReleased.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override public void close() {
+        }
+
+        @Override public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void recordsLatenciesInPowerOfTwoBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(1000);
+        long[] counts = histogram.getCounts();
+        assertEquals(2, counts[0]);
+        assertEquals(2, counts[1]);
+        assertEquals(1, counts[9]);
+        assertEquals(5, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void estimatesPercentilesByBucketUpperBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (int i = 0; i < 99; i++)
+            histogram.record(100);
+        histogram.record(5000);
+        assertEquals(127, histogram.getPercentile(50));
+        assertEquals(127, histogram.getPercentile(99));
+        assertEquals(5000, histogram.getPercentile(99.9));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
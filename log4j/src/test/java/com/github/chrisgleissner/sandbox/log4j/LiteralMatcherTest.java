@@ -0,0 +1,81 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LiteralMatcherTest {
+
+    @Test
+    public void findsNothingWithoutItems() {
+        assertNull(new LiteralMatcher(new ArrayList<FilterItem>()).find("anything"));
+    }
+
+    @Test
+    public void findsItemContainedInString() {
+        List<FilterItem> items = items("he", "she", "his", "hers");
+        LiteralMatcher matcher = new LiteralMatcher(items);
+        assertSame(items.get(0), matcher.find("ushers"));
+        assertSame(items.get(2), matcher.find("this"));
+        assertSame(items.get(0), matcher.find("the"));
+        assertNull(matcher.find("hi"));
+        assertNull(matcher.find(""));
+    }
+
+    @Test
+    public void findsItemViaFailureLink() {
+        List<FilterItem> items = items("abcd", "bce");
+        assertSame(items.get(1), new LiteralMatcher(items).find("xabcex"));
+    }
+
+    @Test
+    public void prefersLowestItemEndingAtSamePosition() {
+        List<FilterItem> items = items("text", "filter because of this text");
+        assertSame(items.get(0), new LiteralMatcher(items).find("filter because of this text"));
+    }
+
+    @Test
+    public void prefersLowestItemOccurringAnywhere() {
+        List<FilterItem> items = items("late", "ear", "y l");
+        assertSame(items.get(0), new LiteralMatcher(items).find("early late"));
+        assertSame(items.get(1), new LiteralMatcher(items).find("early lat"));
+    }
+
+    @Test
+    public void emptyMessageMatchesEverything() {
+        List<FilterItem> items = items("foo", "");
+        assertSame(items.get(1), new LiteralMatcher(items).find(""));
+    }
+
+    @Test
+    public void agreesWithStringContains() {
+        List<FilterItem> items = items("filter", "ilte", "ignore", "gno", "aaa", "aab");
+        LiteralMatcher matcher = new LiteralMatcher(items);
+        for (String s : Arrays.asList("filter", "fil ter", "ignored", "aaab", "aab", "xaax", "iltgno")) {
+            FilterItem expected = null;
+            for (FilterItem item : items) {
+                if (s.contains(item.getMessage()) && expected == null)
+                    expected = item;
+            }
+            assertEquals(s, expected != null, matcher.find(s) != null);
+        }
+    }
+
+    static List<FilterItem> items(String... messages) {
+        List<FilterItem> items = new ArrayList<>();
+        for (String message : messages) {
+            Map<String, Object> yaml = new HashMap<>();
+            yaml.put("message", message);
+            items.add(new FilterItem(yaml));
+        }
+        return items;
+    }
+}
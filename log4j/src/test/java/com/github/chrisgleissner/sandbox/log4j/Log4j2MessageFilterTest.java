@@ -0,0 +1,94 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Log4j2MessageFilterTest {
+    private static final Logger log = LogManager.getLogger(Log4j2MessageFilterTest.class);
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private ObjectName name;
+    private long deniedCount;
+
+    @Before
+    public void setUp() throws Exception {
+        name = new ObjectName("com.github.chrisgleissner.sandbox.log4j:type=MessageFilter,name=\"log4j2\"");
+        deniedCount = getDeniedCount();
+    }
+
+    @Test
+    public void canFilter() throws Exception {
+        log.info("msg");
+        assertAccepted();
+
+        log.info("info message to {}", "filter");
+        assertDenied();
+
+        log.warn("msg");
+        assertAccepted();
+
+        log.warn("{}", "filter");
+        assertDenied();
+
+        log.error("msg", new RuntimeException("filter because of this text"));
+        assertDenied();
+
+        log.error("{}", "msg", new RuntimeException("filter because of this text"));
+        assertDenied();
+
+        log.error("ignore");
+        assertAccepted();
+
+        log.info("ignore");
+        assertDenied();
+
+        log.debug("scoped");
+        assertDenied();
+    }
+
+    @Test
+    public void doesNotAllocateOnSteadyStatePath() {
+        Filter filter = LoggerContext.getContext(false).getConfiguration().getFilter();
+        org.apache.logging.log4j.core.Logger logger = (org.apache.logging.log4j.core.Logger) log;
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Object[] params = {"a", "b", "c"};
+        for (int i = 0; i < 100000; i++)
+            filter(filter, logger, params);
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++)
+            filter(filter, logger, params);
+        allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+        assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes < 1024);
+    }
+
+    private static void filter(Filter filter, org.apache.logging.log4j.core.Logger logger, Object[] params) {
+        assertEquals(Filter.Result.DENY, filter.filter(logger, Level.WARN, null, "a {} to {}", "message", "filter"));
+        assertEquals(Filter.Result.NEUTRAL, filter.filter(logger, Level.WARN, null, "a {} to {}", "message", "keep"));
+        assertEquals(Filter.Result.NEUTRAL, filter.filter(logger, Level.INFO, null, "{} {} {}", params));
+        assertEquals(Filter.Result.NEUTRAL, filter.filter(logger, Level.DEBUG, null, "{} {} {}", params));
+    }
+
+    private long getDeniedCount() throws Exception {
+        return (Long) server.getAttribute(name, "DeniedCount");
+    }
+
+    private void assertDenied() throws Exception {
+        assertEquals(++deniedCount, getDeniedCount());
+    }
+
+    private void assertAccepted() throws Exception {
+        assertEquals(deniedCount, getDeniedCount());
+    }
+}
@@ -1,15 +1,38 @@
 package com.github.chrisgleissner.sandbox.log4j;
 
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import static com.github.chrisgleissner.sandbox.log4j.MessageFilter.getDeniedCount;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class MessageFilterTest {
     private static final Logger log = getLogger(MessageFilterTest.class);
-    private int deniedCount = 0;
+    private long deniedCount = getDeniedCount();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Test
     public void canFilter() throws InterruptedException {
@@ -35,6 +58,191 @@ public class MessageFilterTest {
         assertDenied();
     }
 
+    @Test
+    public void canFilterByLogger() {
+        log.info("scoped");
+        assertAccepted();
+
+        log.debug("scoped");
+        assertDenied();
+
+        getLogger("com.github.chrisgleissner.sandbox.log4j.other.Foo").info("scoped");
+        assertDenied();
+
+        getLogger("com.github.chrisgleissner.sandbox.log4j.otherFoo").info("scoped");
+        assertAccepted();
+    }
+
+    @Test
+    public void canSampleAndLimit() {
+        log.info("sampled");
+        assertAccepted();
+        log.info("sampled");
+        assertDenied();
+        log.info("sampled");
+        assertDenied();
+        log.info("sampled");
+        assertAccepted();
+
+        log.info("limited");
+        assertAccepted();
+        log.info("limited");
+        assertAccepted();
+        log.info("limited");
+        assertDenied();
+    }
+
+    @Test
+    public void annotatesAllowedEventWithSuppressedCount() throws IOException {
+        File config = folder.newFile();
+        Files.write(config.toPath(), "- message: foo\n  level: info\n  action: sample\n  every: 2\n".getBytes(StandardCharsets.UTF_8));
+        MessageFilter filter = new MessageFilter();
+        filter.setConfigPaths(config.getPath());
+        filter.setReload("none");
+        filter.activateOptions();
+        try {
+            assertEquals(Filter.NEUTRAL, filter.decide(event("foo")));
+            assertEquals(Filter.DENY, filter.decide(event("foo")));
+            LoggingEvent event = event("foo");
+            assertEquals(Filter.NEUTRAL, filter.decide(event));
+            assertEquals("1", event.getProperty(MessageFilter.SUPPRESSED_COUNT_PROPERTY));
+        } finally {
+            filter.close();
+        }
+    }
+
+    @Test
+    public void appliesFirstMatchingItemInConfigOrder() throws IOException {
+        File config = folder.newFile();
+        Files.write(config.toPath(), ("- message: second\n  level: info\n  action: sample\n  every: 1000\n"
+                + "- message: ^third.*\n  level: info\n  regex: true\n  action: sample\n  every: 1000\n"
+                + "- message: trace\n  level: info\n  checkStackTrace: true\n  action: sample\n  every: 1000\n"
+                + "- message: first\n  level: info\n").getBytes(StandardCharsets.UTF_8));
+        MessageFilter filter = filter("order", config);
+        try {
+            assertEquals(Filter.NEUTRAL, filter.decide(event("first second")));
+            assertEquals(Filter.NEUTRAL, filter.decide(event("third first")));
+            assertEquals(Filter.NEUTRAL, filter.decide(new LoggingEvent(MessageFilterTest.class.getName(),
+                    org.apache.log4j.Logger.getLogger(MessageFilterTest.class), Level.INFO, "first",
+                    new RuntimeException("trace"))));
+            assertEquals(Filter.DENY, filter.decide(event("first")));
+            deniedCount++;
+        } finally {
+            filter.close();
+        }
+    }
+
+    @Test
+    public void readsConfigOnFirstDecideIfNotActivated() throws IOException {
+        File config = folder.newFile();
+        Files.write(config.toPath(), "- message: foo\n  level: info\n".getBytes(StandardCharsets.UTF_8));
+        MessageFilter filter = new MessageFilter();
+        filter.setConfigPaths(config.getPath());
+        filter.setReload("none");
+        try {
+            assertEquals(Filter.DENY, filter.decide(event("foo")));
+            assertEquals(Filter.NEUTRAL, filter.decide(event("bar")));
+            deniedCount++;
+        } finally {
+            filter.close();
+        }
+    }
+
+    @Test
+    public void exposesStatsViaJmx() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.github.chrisgleissner.sandbox.log4j:type=MessageFilter,name=\"console\"");
+        server.invoke(name, "reset", null, null);
+
+        log.warn("filter");
+        log.warn("msg");
+        log.warn("filter");
+
+        assertEquals(3L, server.getAttribute(name, "DecideCount"));
+        assertEquals(2L, server.getAttribute(name, "DeniedCount"));
+        TabularData hits = (TabularData) server.getAttribute(name, "FilterItemHits");
+        assertEquals(2L, hits.get(new Object[]{"FilterItem(message=filter, level=WARN, logger=, regex=false, checkStackTrace=false, action=deny)"}).get("value"));
+        assertEquals(0L, hits.get(new Object[]{"FilterItem(message=ignore, level=INFO, logger=, regex=false, checkStackTrace=false, action=deny)"}).get("value"));
+        long[] histogram = (long[]) server.getAttribute(name, "DecideLatencyHistogram");
+        long count = 0;
+        for (long bucketCount : histogram)
+            count += bucketCount;
+        assertEquals(3, count);
+        assertTrue((Long) server.getAttribute(name, "DecideLatencyP99Nanos") > 0);
+    }
+
+    @Test
+    public void unregistersMBeanWhenClosedOrReplaced() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.github.chrisgleissner.sandbox.log4j:type=MessageFilter,name=\"replaced\"");
+        File config = folder.newFile();
+        Files.write(config.toPath(), "- message: foo\n  level: info\n".getBytes(StandardCharsets.UTF_8));
+        MessageFilter filter = filter("replaced", config);
+        filter.activateOptions();
+        assertTrue(server.isRegistered(name));
+
+        MessageFilter replacingFilter = filter("replaced", config);
+        assertEquals(Filter.DENY, replacingFilter.decide(event("foo")));
+        assertEquals(Filter.NEUTRAL, filter.decide(event("foo")));
+        assertTrue(server.isRegistered(name));
+
+        replacingFilter.close();
+        assertFalse(server.isRegistered(name));
+        assertEquals(Filter.NEUTRAL, replacingFilter.decide(event("foo")));
+        deniedCount++;
+    }
+
+    @Test
+    public void summarizesSuppressedEventsOncePerWindow() throws Exception {
+        File config = folder.newFile();
+        Files.write(config.toPath(), "- message: flood\n  level: info\n  action: summarize\n  window: 1ms\n".getBytes(StandardCharsets.UTF_8));
+        List<String> summaries = new CopyOnWriteArrayList<>();
+        AppenderSkeleton appender = new AppenderSkeleton() {
+            @Override protected void append(LoggingEvent event) {
+                summaries.add(event.getLevel() + " " + event.getRenderedMessage());
+            }
+
+            @Override public void close() {
+            }
+
+            @Override public boolean requiresLayout() {
+                return false;
+            }
+        };
+        org.apache.log4j.Logger summaryLogger = org.apache.log4j.Logger.getLogger(MessageFilter.class);
+        summaryLogger.addAppender(appender);
+        MessageFilter filter = filter("summary", config);
+        try {
+            assertEquals(Filter.NEUTRAL, filter.decide(event("flood")));
+            assertEquals(Filter.DENY, filter.decide(event("flood")));
+            assertEquals(Filter.DENY, filter.decide(event("flood")));
+            deniedCount += 2;
+
+            long timeout = System.currentTimeMillis() + 5000;
+            while (summaries.isEmpty() && System.currentTimeMillis() < timeout)
+                Thread.sleep(10);
+            assertEquals(asList("INFO Suppressed 2 events matching FilterItem(message=flood, level=INFO, logger=, "
+                    + "regex=false, checkStackTrace=false, action=RuleAction.Summarize(windowNanos=1000000))"), summaries);
+        } finally {
+            filter.close();
+            summaryLogger.removeAppender(appender);
+        }
+    }
+
+    private static MessageFilter filter(String name, File config) {
+        MessageFilter filter = new MessageFilter();
+        filter.setName(name);
+        filter.setConfigPaths(config.getPath());
+        filter.setReload("none");
+        filter.activateOptions();
+        return filter;
+    }
+
+    private static LoggingEvent event(String message) {
+        return new LoggingEvent(MessageFilterTest.class.getName(), org.apache.log4j.Logger.getLogger(MessageFilterTest.class),
+                Level.INFO, message, null);
+    }
+
     private void assertDenied() {
         assertEquals(++deniedCount, getDeniedCount());
     }
@@ -0,0 +1,70 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegexLiteralsTest {
+
+    @Test
+    public void extractsLiteralsBetweenWildcards() {
+        assertEquals(Arrays.asList("filter", "text"), RegexLiterals.of(".*filter.*text"));
+        assertEquals(Arrays.asList("Connection ", " refused"), RegexLiterals.of("^Connection \\d+ refused$"));
+    }
+
+    @Test
+    public void dropsOptionalCharacters() {
+        assertEquals(Arrays.asList("colo", "r"), RegexLiterals.of("colou?r"));
+        assertEquals(Arrays.asList("ab", "c"), RegexLiterals.of("ab+c"));
+        assertEquals(Arrays.asList("ab", "d"), RegexLiterals.of("abc{2,3}d"));
+    }
+
+    @Test
+    public void skipsGroupsAndCharacterClasses() {
+        assertEquals(Arrays.asList("error", "id"), RegexLiterals.of("error(s|\\)x)?[]a-z[^b]]id"));
+        assertEquals(Arrays.asList("a.b"), RegexLiterals.of("a\\.b"));
+    }
+
+    @Test
+    public void extractsNothingIfLiteralsAreNotRequired() {
+        assertEquals(Collections.emptyList(), RegexLiterals.of("foo|bar"));
+        assertEquals(Collections.emptyList(), RegexLiterals.of("(?i)filter"));
+        assertEquals(Collections.emptyList(), RegexLiterals.of("\\x41bc"));
+        assertEquals(Collections.emptyList(), RegexLiterals.of("(a)\\1"));
+        assertEquals(Collections.emptyList(), RegexLiterals.of(".*"));
+    }
+
+    @Test
+    public void prefilterAgreesWithRegex() {
+        for (String regex : Arrays.asList(".*filter.*text", "colou?r", "ab+c.*", "error(s|x)? [0-9]+", ".*a\\.b.*")) {
+            Map<String, Object> yaml = new HashMap<>();
+            yaml.put("message", regex);
+            yaml.put("regex", true);
+            FilterItem item = new FilterItem(yaml);
+            for (String s : Arrays.asList("filter text", "filtertext", "text filter", "color", "colour", "colr",
+                    "abbbc", "ac", "error 1", "errors 12", "error", "a.b", "axb"))
+                assertEquals(regex + " ~ " + s, Pattern.matches(regex, s), item.matches(s));
+        }
+    }
+
+    @Test
+    public void reusesMatcherAcrossCharSequences() {
+        Map<String, Object> yaml = new HashMap<>();
+        yaml.put("message", ".*filter.*");
+        yaml.put("regex", true);
+        FilterItem item = new FilterItem(yaml);
+        StringBuilder sb = new StringBuilder("to filter");
+        assertTrue(item.matches(sb));
+        sb.setLength(0);
+        sb.append("to keep");
+        assertFalse(item.matches(sb));
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RuleActionTest {
+
+    @Test
+    public void deniesByDefault() {
+        assertSame(RuleAction.DENY, RuleAction.of(yaml()));
+        assertEquals(RuleAction.DENIED, RuleAction.DENY.allow());
+    }
+
+    @Test
+    public void limitsPerWindow() throws InterruptedException {
+        RuleAction action = RuleAction.of(yaml("action", "limit", "limit", 2, "window", "200ms"));
+        assertEquals(0, action.allow());
+        assertEquals(0, action.allow());
+        assertEquals(RuleAction.DENIED, action.allow());
+        assertEquals(RuleAction.DENIED, action.allow());
+        Thread.sleep(250);
+        assertEquals(2, action.allow());
+        assertEquals(0, action.allow());
+    }
+
+    @Test
+    public void samples() {
+        RuleAction action = RuleAction.of(yaml("action", "sample", "every", 3));
+        assertEquals(0, action.allow());
+        assertEquals(RuleAction.DENIED, action.allow());
+        assertEquals(RuleAction.DENIED, action.allow());
+        assertEquals(2, action.allow());
+    }
+
+    @Test
+    public void summarizes() {
+        RuleAction.Summarize action = (RuleAction.Summarize) RuleAction.of(yaml("action", "summarize", "window", "1h"));
+        assertEquals(0, action.allow());
+        assertEquals(RuleAction.DENIED, action.allow());
+        assertEquals(RuleAction.DENIED, action.allow());
+        assertEquals(0, action.summarize(System.nanoTime()));
+
+        long nextWindowNanos = System.nanoTime() + TimeUnit.HOURS.toNanos(1);
+        assertEquals(2, action.summarize(nextWindowNanos));
+        assertEquals(0, action.summarize(nextWindowNanos));
+        assertEquals(0, action.allow());
+        assertEquals(RuleAction.of(yaml("action", "summarize", "window", "60m")), action);
+    }
+
+    @Test
+    public void parsesWindow() {
+        assertEquals(TimeUnit.MINUTES.toNanos(1), RuleAction.getWindowNanos(yaml()));
+        assertEquals(TimeUnit.SECONDS.toNanos(5), RuleAction.getWindowNanos(yaml("window", 5)));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), RuleAction.getWindowNanos(yaml("window", "5ms")));
+        assertEquals(TimeUnit.SECONDS.toNanos(5), RuleAction.getWindowNanos(yaml("window", "5s")));
+        assertEquals(TimeUnit.MINUTES.toNanos(5), RuleAction.getWindowNanos(yaml("window", "5m")));
+        assertEquals(TimeUnit.HOURS.toNanos(5), RuleAction.getWindowNanos(yaml("window", "5h")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownAction() {
+        RuleAction.of(yaml("action", "drop"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingLimit() {
+        RuleAction.of(yaml("action", "limit"));
+    }
+
+    private static Map<String, Object> yaml(Object... keyValues) {
+        Map<String, Object> yaml = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+            yaml.put((String) keyValues[i], keyValues[i + 1]);
+        return yaml;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.apache.log4j.spi.ThrowableInformation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StackTraceScannerTest {
+
+    @Test
+    public void scansLinesAsRenderedByLog4j() {
+        Throwable throwable = throwable();
+        final List<String> lines = new ArrayList<>();
+        assertNull(StackTraceScanner.scan(throwable, new StackTraceScanner.LineMatcher() {
+            @Override public FilterItem match(CharSequence line, FilterItem match) {
+                lines.add(line.toString());
+                return match;
+            }
+
+            @Override public boolean isFinal(FilterItem match) {
+                return false;
+            }
+        }));
+        assertEquals(Arrays.asList(new ThrowableInformation(throwable).getThrowableStrRep()), lines);
+    }
+
+    @Test
+    public void stopsAtFirstLineWithFinalMatch() {
+        final FilterItem filterItem = LiteralMatcherTest.items("Inner").get(0);
+        final List<String> lines = new ArrayList<>();
+        assertSame(filterItem, StackTraceScanner.scan(throwable(), new StackTraceScanner.LineMatcher() {
+            @Override public FilterItem match(CharSequence line, FilterItem match) {
+                lines.add(line.toString());
+                return line.toString().contains("Inner") ? filterItem : match;
+            }
+
+            @Override public boolean isFinal(FilterItem match) {
+                return match != null;
+            }
+        }));
+        assertEquals("\tat com.foo.Inner.run(Inner.java:3)", lines.get(lines.size() - 1));
+        assertEquals(9, lines.size());
+    }
+
+    private static Throwable throwable() {
+        StackTraceElement common = new StackTraceElement("com.foo.Main", "main", "Main.java", 10);
+        Exception cause = new IllegalStateException("cause\nwith two lines");
+        cause.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.foo.Inner", "run", "Inner.java", 3),
+                new StackTraceElement("com.foo.Native", "call", null, -2),
+                common});
+        Exception suppressed = new IllegalArgumentException("suppressed");
+        suppressed.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.foo.Closer", "close", null, -1), common});
+        Exception throwable = new RuntimeException("outer", cause);
+        throwable.addSuppressed(suppressed);
+        throwable.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.foo.Outer", "run", "Outer.java", -1), common});
+        return throwable;
+    }
+}
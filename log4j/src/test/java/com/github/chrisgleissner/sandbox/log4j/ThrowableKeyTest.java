@@ -0,0 +1,55 @@
+package com.github.chrisgleissner.sandbox.log4j;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ThrowableKeyTest {
+
+    @Test
+    public void distinguishesThrowablesDifferingInDeeperFrame() {
+        Throwable other = throwable("com.foo.Other");
+        Throwable secret = throwable("com.foo.Secret");
+        assertEquals(ThrowableKey.of(other), ThrowableKey.of(throwable("com.foo.Other")));
+        assertNotEquals(ThrowableKey.of(other), ThrowableKey.of(secret));
+
+        Map<String, Object> yaml = new HashMap<>();
+        yaml.put("message", "com.foo.Secret");
+        yaml.put("checkStackTrace", true);
+        FilterItem filterItem = new FilterItem(yaml);
+        RuleSet.Rules rules = new RuleSet.Rules(Collections.singletonList(filterItem));
+        assertNull(rules.matchStackTrace(other, null));
+        assertSame(filterItem, rules.matchStackTrace(secret, null));
+    }
+
+    @Test
+    public void distinguishesThrowablesDifferingInSuppressed() {
+        Throwable throwable = throwable("com.foo.Other");
+        Throwable withSuppressed = throwable("com.foo.Other");
+        withSuppressed.addSuppressed(new IllegalStateException("close failed"));
+        assertNotEquals(ThrowableKey.of(throwable), ThrowableKey.of(withSuppressed));
+    }
+
+    @Test
+    public void hasNoKeyForCircularReference() {
+        Exception cause = new IllegalStateException("cause");
+        Exception throwable = new RuntimeException("outer", cause);
+        cause.addSuppressed(throwable);
+        assertNull(ThrowableKey.of(throwable));
+    }
+
+    private static Throwable throwable(String deeperClassName) {
+        Exception throwable = new RuntimeException("failed");
+        throwable.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.foo.Service", "run", "Service.java", 3),
+                new StackTraceElement(deeperClassName, "call", "Caller.java", 7)});
+        return throwable;
+    }
+}